@@ -0,0 +1,203 @@
+package org.nullbool;
+
+import org.nullbool.api.AbstractAnalysisProvider;
+import org.nullbool.api.Context;
+import org.nullbool.api.Revision;
+import org.nullbool.api.analysis.ClassAnalyser;
+import org.nullbool.impl.AnalysisProviderRegistry;
+import org.nullbool.pi.core.hook.api.ClassHook;
+import org.nullbool.pi.core.hook.api.ObfuscatedData;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Analyses every gamepack in a directory in one JVM and prints how long each
+ * revision took and how many of the supported hooks were found. <br>
+ *
+ * The gamepacks are named either 'gamepackN.jar' or 'N.jar' and are resolved
+ * through the {@link AnalysisProviderRegistry}. Several revisions are run at
+ * once, each on its own thread, but a revision only starts once there is
+ * room for it in the memory budget. Since the revisions are already run side
+ * by side, the providers themselves don't use the parallel passes. <br>
+ *
+ * Usage: BatchBoot &lt;gamepack directory&gt; [threads] [memory budget in MB]
+ */
+public class BatchBoot {
+
+    /* Roughly how much heap a revision needs per byte of its jar while it's
+     * being analysed (a 1.6MB gamepack needs about 256MB). */
+    private static final long HEAP_PER_JAR_BYTE = 160;
+
+    private final int threads;
+    private final int budget;
+    private final Semaphore memory;
+
+    public BatchBoot(int threads, long budget) {
+        this.threads = threads;
+        this.budget = (int) Math.max(1, budget >> 20);
+        memory = new Semaphore(this.budget, true);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: BatchBoot <gamepack directory> [threads] [memory budget in MB]");
+            return;
+        }
+
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long budget = args.length > 2 ? Long.parseLong(args[2]) << 20 : Runtime.getRuntime().maxMemory() / 4 * 3;
+
+        Boot.bootstrap();
+        List<Revision> revisions = revisions(new File(args[0]));
+        List<Result> results = new BatchBoot(threads, budget).run(revisions);
+        print(results);
+        System.exit(0);
+    }
+
+    public List<Result> run(List<Revision> revisions) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (Revision rev : revisions) {
+                futures.add(executor.submit(() -> run(rev)));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Result run(Revision rev) throws InterruptedException {
+        /* A revision that is bigger than the whole budget still gets to run, on its own. */
+        int cost = (int) Math.min(budget, Math.max(1, (rev.getDataFile().length() * HEAP_PER_JAR_BYTE) >> 20));
+        memory.acquire(cost);
+
+        Result result = new Result(rev);
+        long start = System.currentTimeMillis();
+        try {
+            AbstractAnalysisProvider provider = AnalysisProviderRegistry.get(rev).create(rev);
+            result.provider = provider.getClass().getSimpleName();
+            Boot.putLatestFlags(provider.getFlags());
+            provider.getFlags().put("parallel", false);
+
+            Context.bind(provider);
+            try {
+                provider.run();
+            } finally {
+                Context.unbind();
+            }
+
+            result.deobTime = provider.getDeobTime();
+            result.analysisTime = provider.getAnalysisTime();
+            if (provider.getAnalysers() != null)
+                result.count(provider.getAnalysers());
+        } catch (Throwable t) {
+            t.printStackTrace();
+            result.error = t.getClass().getSimpleName() + (t.getMessage() != null ? ": " + t.getMessage() : "");
+        } finally {
+            result.time = System.currentTimeMillis() - start;
+            memory.release(cost);
+        }
+        return result;
+    }
+
+    private static List<Revision> revisions(File dir) {
+        List<Revision> revisions = new ArrayList<Revision>();
+        File[] files = dir.listFiles();
+        if (files == null)
+            throw new IllegalArgumentException(dir + " isn't a directory.");
+
+        for (File f : files) {
+            String name = f.getName();
+            if (!f.isFile() || !name.endsWith(".jar"))
+                continue;
+
+            name = name.substring(0, name.length() - 4);
+            if (name.startsWith("gamepack"))
+                name = name.substring(8);
+            if (name.matches("\\d+"))
+                revisions.add(new Revision(name, f));
+        }
+
+        Collections.sort(revisions, (r1, r2) -> Integer.compare(Integer.parseInt(r1.getName()), Integer.parseInt(r2.getName())));
+        return revisions;
+    }
+
+    private static void print(List<Result> results) {
+        System.out.println();
+        System.out.printf("%-8s %-26s %9s %9s %9s %9s %11s %11s  %s%n", "Rev", "Provider", "Total", "Deob", "Analysis", "Classes", "Fields", "Methods", "Error");
+        for (Result r : results) {
+            System.out.printf("%-8s %-26s %8dms %8dms %8dms %9s %11s %11s  %s%n", r.revision.getName(), r.provider, r.time, r.deobTime, r.analysisTime,
+                    r.classes + "/" + r.totalClasses, r.fields + "/" + r.totalFields, r.methods + "/" + r.totalMethods, r.error != null ? r.error : "");
+        }
+    }
+
+    public static class Result {
+        private final Revision revision;
+        private String provider = "";
+        private String error;
+        private long time;
+        private long deobTime;
+        private long analysisTime;
+        private int classes, totalClasses;
+        private int fields, totalFields;
+        private int methods, totalMethods;
+
+        public Result(Revision revision) {
+            this.revision = revision;
+        }
+
+        private void count(List<ClassAnalyser> analysers) {
+            for (ClassAnalyser a : analysers) {
+                ClassHook ch = a.getFoundHook();
+                totalClasses++;
+                totalFields += a.supportedFields().length;
+                totalMethods += a.supportedMethods().length;
+                if (ch == null)
+                    continue;
+
+                classes++;
+                fields += found(a.supportedFields(), ch.fields());
+                methods += found(a.supportedMethods(), ch.methods());
+            }
+        }
+
+        private static int found(String[] supported, List<? extends ObfuscatedData> hooks) {
+            int count = 0;
+            for (String s : supported) {
+                String name = s.substring(0, s.indexOf('&') == -1 ? s.length() : s.indexOf('&'));
+                for (ObfuscatedData d : hooks) {
+                    if (name.equals(d.refactored())) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+            return count;
+        }
+
+        public Revision getRevision() {
+            return revision;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -53,6 +53,12 @@ public class Boot {
 
     private static void runLatest(AbstractAnalysisProvider provider) throws Exception {
         Map<String, Boolean> flags = provider.getFlags();
+        putLatestFlags(flags);
+        // flags.put("generateheaders", true);
+        runFlags(provider, flags);
+    }
+
+    static void putLatestFlags(Map<String, Boolean> flags) {
         flags.put("nodump", false);
         flags.put("debug", true);
         flags.put("reorderfields", true);
@@ -60,10 +66,10 @@ public class Boot {
         flags.put("logresults", true);
         flags.put("verify", false);
         flags.put("paramdeob", true);
-        // flags.put("generateheaders", true);
-        runFlags(provider, flags);
+        flags.put("parallel", true);
     }
-    private static void bootstrap() throws Exception {
+
+    static void bootstrap() throws Exception {
         AnalysisProviderRegistry.register(new RegistryEntry(new ProviderCreator() {
             @Override
             public AbstractAnalysisProvider create(Revision rev) throws Exception {
@@ -1,10 +1,13 @@
 package org.nullbool.api;
 
+import org.nullbool.api.analysis.AnalyserScheduler;
 import org.nullbool.api.analysis.AnalysisException;
 import org.nullbool.api.analysis.ClassAnalyser;
+import org.nullbool.api.analysis.MissingDependencyException;
 import org.nullbool.api.obfuscation.*;
 import org.nullbool.api.obfuscation.OpaquePredicateRemover.Opaque;
 import org.nullbool.api.obfuscation.cfg.CFGCache;
+import org.nullbool.api.obfuscation.cfg.CompactGraphAdapter;
 import org.nullbool.api.obfuscation.cfg.ControlFlowException;
 import org.nullbool.api.obfuscation.cfg.IControlFlowGraph;
 import org.nullbool.api.obfuscation.cfg.SaneControlFlowGraph;
@@ -15,8 +18,10 @@ import org.nullbool.api.obfuscation.stuffthatdoesntwork.MultiplicativeModifierDe
 import org.nullbool.api.output.APIGenerator;
 import org.nullbool.api.output.NewOutputLogger;
 import org.nullbool.api.rs.CaseAnalyser;
-import org.nullbool.api.util.InstructionIdentifier;
+import org.nullbool.api.util.InstructionCache;
+import org.nullbool.api.util.JarParser;
 import org.nullbool.api.util.NodedContainer;
+import org.nullbool.api.util.ReferenceIndex;
 import org.nullbool.api.util.map.ValueCreator;
 import org.nullbool.pi.core.hook.api.*;
 import org.nullbool.pi.core.hook.serimpl.StaticMapSerialiserImpl;
@@ -24,9 +29,9 @@ import org.objectweb.custom_asm.Opcodes;
 import org.objectweb.custom_asm.Type;
 import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
 import org.objectweb.custom_asm.commons.cfg.tree.util.TreeBuilder;
+import org.objectweb.custom_asm.commons.cfg.tree.util.TreeCache;
 import org.objectweb.custom_asm.tree.ClassNode;
 import org.objectweb.custom_asm.tree.FieldNode;
-import org.objectweb.custom_asm.tree.InsnList;
 import org.objectweb.custom_asm.tree.MethodNode;
 import org.topdank.byteengineer.commons.data.JarContents;
 import org.topdank.byteengineer.commons.data.LocateableJarContents;
@@ -37,13 +42,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 @SuppressWarnings(value = {"all"})
 public abstract class AbstractAnalysisProvider {
 
+    /* The most instructions that the methods of the cached control flow graphs
+     * can have in total when they're bounded (about a quarter of a gamepack). */
+    private static final long CFG_CACHE_WEIGHT = 250000;
+
     private final Revision revision;
+    private final JarParser jarParser;
     private final LocateableJarContents<ClassNode> contents;
-    private final String[] instructions;
     private final Map<String, Boolean> flags;
     private long startTime;
     private long deobTime;
@@ -55,29 +67,63 @@ public abstract class AbstractAnalysisProvider {
     private EmptyParameterFixer emptyParameterFixer;
     private CFGCache cfgCache;
     private TreeBuilder builder;
+    private TreeCache treeCache;
+    private InstructionCache instructionCache;
+    private ReferenceIndex referenceIndex;
+    private ForkJoinPool pool;
+    private ParallelTreeVisitor treeVisitor;
     private CaseAnalyser caseAnalyser;
     private ReverseMethodDescCache methodCache;
+    /* The jars that are still being written. */
+    private final List<Future<Integer>> dumps = new ArrayList<Future<Integer>>();
 
     private volatile boolean haltRequested;
 
     public AbstractAnalysisProvider(Revision revision) throws IOException {
         this.revision = revision;
-        contents = new LocateableJarContents<ClassNode>(new NodedContainer<ClassNode>(revision.parse().values()), null, null);
-        instructions = getAllInstructions();
+        jarParser = revision.load();
+        contents = new LocateableJarContents<ClassNode>(new NodedContainer<ClassNode>(jarParser.getParsedClasses().values()), null, null);
         flags = new HashMap<String, Boolean>();
     }
 
     public void run() throws AnalysisException {
         startTime = System.currentTimeMillis();
+        if (flags.getOrDefault("basicout", true))
+            jarParser.output();
+
         classTree = new ClassTree(contents.getClassContents());
+        classTree.setIndexed(flags.getOrDefault("indexedtree", true));
         classTree.output();
 
         methodCache = new ReverseMethodDescCache(contents.getClassContents());
 
         multiplierHandler = new MultiplierHandler();
         builder = new TreeBuilder();
+        treeCache = new TreeCache();
+        instructionCache = new InstructionCache();
+        if (flags.getOrDefault("parallel", false)) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), Context.workerFactory(this), null, false);
+            treeVisitor = new ParallelTreeVisitor(pool, builder, treeCache);
+        }
+
+        try {
+            runPhases();
+        } finally {
+            awaitDumps();
+            if (pool != null)
+                pool.shutdown();
+        }
+
+        Context.unbind();
+    }
+
+    private void runPhases() throws AnalysisException {
         deobfuscate();
 
+        if (flags.getOrDefault("basicout", true))
+            treeCache.output();
+        treeCache.clear();
+
         deobTime = System.currentTimeMillis() - startTime;
 
         if (!flags.getOrDefault("nodump", false)) {
@@ -91,6 +137,13 @@ public abstract class AbstractAnalysisProvider {
             if (analysers != null && analysers.size() != 0)
                 analyse();
 
+            if (flags.getOrDefault("basicout", true)) {
+                instructionCache.output();
+                cfgCache.output();
+            }
+            instructionCache.clear();
+            cfgCache.clear();
+
             if (haltRequested)
                 return;
 
@@ -102,8 +155,6 @@ public abstract class AbstractAnalysisProvider {
                 e.printStackTrace();
             }
         }
-
-        Context.unbind();
     }
 
     private void output() {
@@ -134,8 +185,18 @@ public abstract class AbstractAnalysisProvider {
             folder.mkdirs();
             File logFile = new File(folder, "log.ser");
             FileOutputStream fos = new FileOutputStream(logFile);
+
+            /* The compact formats are only written when asked for until the
+             * clients that can read them are out. */
+            int format = StaticMapSerialiserImpl.V1;
+            if (flags.getOrDefault("indexedmap", false))
+                format = StaticMapSerialiserImpl.V3;
+            else if (flags.getOrDefault("compactmap", false))
+                format = StaticMapSerialiserImpl.V2;
+            StaticMapSerialiserImpl serialiser = new StaticMapSerialiserImpl(format);
+
             // write content header type
-            fos.write("content-type=bser\n".getBytes());
+            fos.write(("content-type=" + serialiser.contentType() + "\n").getBytes());
 
             MethodCache cache = new MethodCache(contents.getClassContents());
             for (ClassHook ch : map.classes()) {
@@ -180,7 +241,7 @@ public abstract class AbstractAnalysisProvider {
                 }
             }
 
-            new StaticMapSerialiserImpl().serialise(map, fos);
+            serialiser.serialise(map, fos);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -316,21 +377,23 @@ public abstract class AbstractAnalysisProvider {
             }
         };
 
-        BytecodeRefactorer refactorer = new BytecodeRefactorer((Collection<ClassNode>) contents.getClassContents(), remapper);
+        BytecodeRefactorer refactorer = new BytecodeRefactorer((Collection<ClassNode>) contents.getClassContents(), remapper, classTree);
+        refactorer.setPool(pool);
         refactorer.start();
 
         //TODO: reorder
         if (flags.getOrDefault("reorderfields", true))
             reorderFields();
 
-        CompleteJarDumper dumper = new CompleteJarDumper(contents);
+        CompleteJarDumper dumper = new CompleteJarDumper(contents, classTree);
+        dumper.setPool(pool);
         String name = getRevision().getName();
         File file = new File("out/" + name + "/refactor" + name + ".jar");
         if (file.exists())
             file.delete();
         file.mkdirs();
         try {
-            dumper.dump(file);
+            dumps.add(dumper.dumpAsync(file));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -439,7 +502,8 @@ public abstract class AbstractAnalysisProvider {
                 }
             };
 
-            BytecodeRefactorer refactorer = new BytecodeRefactorer(contents.getClassContents(), remapper);
+            BytecodeRefactorer refactorer = new BytecodeRefactorer(contents.getClassContents(), remapper, classTree);
+            refactorer.setPool(pool);
             refactorer.start();
 
             //			IRemapper rm = new IRemapper() {
@@ -476,7 +540,12 @@ public abstract class AbstractAnalysisProvider {
         }
 
 
-        CompleteJarDumper dumper = new CompleteJarDumper(contents);
+        /* The classes are written before analysis starts changing them, the
+         * jar itself is written alongside it. The deob jar is an intermediate
+         * jar, so its entries can be stored instead of compressed. */
+        CompleteJarDumper dumper = new CompleteJarDumper(contents, classTree);
+        dumper.setPool(pool);
+        dumper.setStored(flags.getOrDefault("storeddeob", false));
         String name = getRevision().getName();
         File file = new File("out/" + name + "/deob.jar");
         if (file.exists())
@@ -484,12 +553,26 @@ public abstract class AbstractAnalysisProvider {
         file.mkdirs();
 
         try {
-            dumper.dump(file);
+            dumps.add(dumper.dumpAsync(file));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private void awaitDumps() {
+        for (Future<Integer> dump : dumps) {
+            try {
+                dump.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        dumps.clear();
+    }
+
     private static boolean paramsMatch(String d1, String d2) {
         Type[] args1 = Type.getArgumentTypes(d1);
         Type[] args2 = Type.getArgumentTypes(d2);
@@ -525,22 +608,24 @@ public abstract class AbstractAnalysisProvider {
         buildCases();
 
         Map<String, ClassNode> classNodes = contents.getClassContents().namedMap();
-        for (ClassAnalyser a : analysers) {
+        long start = System.nanoTime();
+        referenceIndex = new ReferenceIndex(classNodes);
+        if (flags.getOrDefault("basicout", true))
+            System.err.printf("Indexed %d references in %.2fms.%n", referenceIndex.size(), (System.nanoTime() - start) / 1e6);
+
+        AnalyserScheduler scheduler = new AnalyserScheduler(analysers, pool != null);
+        for (List<ClassAnalyser> level : scheduler.getLevels()) {
             if (haltRequested)
                 return;
 
-            // System.out.println("Running " + a.getName());
+            scheduler.identify(level, classNodes, pool);
 
-            try {
-                a.preRun(classNodes);
-            } catch (Exception e) {
-                e.printStackTrace();
+            for (ClassAnalyser a : level) {
+                if (a.getFoundClass() == null || a.getFoundHook() == null)
+                    //System.err.println("Couldn't find " + a.getName());
+                    throw new AnalysisException("Couldn't find " + a.getName());
             }
 
-            if (a.getFoundClass() == null || a.getFoundHook() == null)
-                //System.err.println("Couldn't find " + a.getName());
-                throw new AnalysisException("Couldn't find " + a.getName());
-
             if (haltRequested)
                 return;
         }
@@ -548,18 +633,24 @@ public abstract class AbstractAnalysisProvider {
         if (haltRequested)
             return;
 
-        for (ClassAnalyser a : analysers) {
-            if (haltRequested)
-                return;
+        if (pool != null) {
+            scheduler.runSubs(analysers, pool);
+        } else {
+            for (ClassAnalyser a : analysers) {
+                if (haltRequested)
+                    return;
+
+                try {
+                    a.runSubs();
+                } catch (MissingDependencyException e) {
+                    throw e;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
 
-            try {
-                a.runSubs();
-            } catch (Exception e) {
-                System.err.println(a.getClass().getCanonicalName() + " -> " + e.getClass().getSimpleName());
+                if (haltRequested)
+                    return;
             }
-
-            if (haltRequested)
-                return;
         }
 
         if (haltRequested)
@@ -638,26 +729,22 @@ public abstract class AbstractAnalysisProvider {
     }
 
     private void buildCfgs() {
+        /* The graphs are built when they're first asked for unless cfgwarmup is set.
+         * boundcfgs drops the least recently used graphs once they get too big and
+         * compactcfgs keeps them as int arrays until their blocks are needed. */
+        final boolean compact = flags.getOrDefault("compactcfgs", true);
         cfgCache = new CFGCache(new ValueCreator<IControlFlowGraph>() {
             @Override
             public IControlFlowGraph create() {
-                return new SaneControlFlowGraph();
+                return compact ? new CompactGraphAdapter() : new SaneControlFlowGraph();
             }
-        });
-        for (ClassNode cn : contents.getClassContents()) {
-            for (MethodNode m : cn.methods) {
-                if (m.instructions.size() > 0) {
-                    try {
-                        cfgCache.get(m);
-                    } catch (ControlFlowException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }
+        }, flags.getOrDefault("boundcfgs", false) ? CFG_CACHE_WEIGHT : Long.MAX_VALUE);
 
-        if (Context.current().getFlags().getOrDefault("basicout", true))
-            System.err.printf("Built %d control flow graphs.%n", cfgCache.size());
+        if (flags.getOrDefault("cfgwarmup", false)) {
+            cfgCache.warmUp(contents.getClassContents(), pool);
+            if (flags.getOrDefault("basicout", true))
+                System.err.printf("Built %d control flow graphs.%n", cfgCache.size());
+        }
     }
 
     private void replaceCharStringBuilders() {
@@ -668,7 +755,7 @@ public abstract class AbstractAnalysisProvider {
 
     private void removeEmptyPops() {
         EmptyPopRemover remover = new EmptyPopRemover();
-        visit(remover);
+        visitAll(remover);
         remover.output();
     }
 
@@ -682,12 +769,24 @@ public abstract class AbstractAnalysisProvider {
     private void deobOpaquePredicates() {
         opaqueRemover = new OpaquePredicateRemover();
 
-        for (ClassNode cn : contents.getClassContents()) {
-            for (MethodNode m : cn.methods) {
-                if (m.instructions.size() > 0) {
-                    if (opaqueRemover.methodEnter(m)) {
-                        builder.build(m).accept(opaqueRemover);
-                        opaqueRemover.methodExit();
+        if (treeVisitor != null) {
+            treeVisitor.visit(contents.getClassContents(), opaqueRemover, new ParallelTreeVisitor.MethodAction<OpaquePredicateRemover>() {
+                @Override
+                public void visit(TreeBuilder builder, MethodNode m, OpaquePredicateRemover visitor) {
+                    if (visitor.methodEnter(m)) {
+                        treeCache.get(m, builder).accept(visitor);
+                        visitor.methodExit();
+                    }
+                }
+            });
+        } else {
+            for (ClassNode cn : contents.getClassContents()) {
+                for (MethodNode m : cn.methods) {
+                    if (m.instructions.size() > 0) {
+                        if (opaqueRemover.methodEnter(m)) {
+                            treeCache.get(m, builder).accept(opaqueRemover);
+                            opaqueRemover.methodExit();
+                        }
                     }
                 }
             }
@@ -698,20 +797,18 @@ public abstract class AbstractAnalysisProvider {
 
     private void reorderNullChecks() {
         ComparisonReorderer fixer = new ComparisonReorderer();
-        visit(fixer);
+        visitAll(fixer);
         fixer.output();
     }
 
     private void reorderOperations() {
-        ConstantAppropriator propagator = new ConstantAppropriator();
         SimpleArithmeticFixer fixer = new SimpleArithmeticFixer();
 
         if (Context.current().getFlags().getOrDefault("basicout", true)) {
             System.err.println("Running Simple Arithmetic Fixer.");
         }
 
-        visit(propagator);
-        visit(fixer);
+        visitAll(fixer);
         fixer.output();
     }
 
@@ -745,15 +842,33 @@ public abstract class AbstractAnalysisProvider {
 
     private void removeDummyMethods(JarContents<? extends ClassNode> contents) {
         new HierarchyVisitor().accept(contents);
-        new CallVisitor().accept(contents);
+        new CallVisitor(pool).accept(contents);
     }
 
+    /**
+     * Runs the read only analyses of the constants in the code. Neither of
+     * them changes any code or needs anything from the passes in between, so
+     * they share a single walk over every method (see {@link FusedVisitor}).
+     */
     private void analyseMultipliers() {
         MultiplierVisitor mutliVisitor = new MultiplierVisitor(multiplierHandler);
-        visit(mutliVisitor);
+        ConstantAppropriator propagator = new ConstantAppropriator();
+        visitAll(new FusedVisitor().add(mutliVisitor).add(propagator));
         mutliVisitor.log();
     }
 
+    /**
+     * Visits every method with the given visitor, splitting the methods
+     * between the worker threads if the 'parallel' flag is set.
+     */
+    private <V extends NodeVisitor & ForkableVisitor<V>> void visitAll(V nv) {
+        if (treeVisitor != null) {
+            treeVisitor.visit(contents.getClassContents(), nv);
+        } else {
+            visit(nv);
+        }
+    }
+
     private void visit(NodeVisitor nv) {
         for (ClassNode cn : contents.getClassContents()) {
             visit(cn, nv);
@@ -768,8 +883,9 @@ public abstract class AbstractAnalysisProvider {
 
     private void visit(MethodNode m, NodeVisitor nv) {
         if (m.instructions.size() > 0) {
-            builder.build(m).accept(nv);
-            ;
+            treeCache.get(m, builder).accept(nv);
+            if (!(nv instanceof ReadOnlyVisitor))
+                treeCache.invalidate(m);
         }
     }
 
@@ -795,8 +911,12 @@ public abstract class AbstractAnalysisProvider {
         return flags;
     }
 
-    public String[] getInstructions() {
-        return instructions;
+    public InstructionCache getInstructionCache() {
+        return instructionCache;
+    }
+
+    public ReferenceIndex getReferenceIndex() {
+        return referenceIndex;
     }
 
     public ClassTree getClassTree() {
@@ -819,20 +939,6 @@ public abstract class AbstractAnalysisProvider {
         return cfgCache;
     }
 
-    private String[] getAllInstructions() {
-        InsnList aIns = null;
-        List<String> mI = new ArrayList<String>();
-        List<String> ins = new ArrayList<String>();
-        Iterator<ClassNode> it = contents.getClassContents().iterator();
-        while (it.hasNext())
-            for (Object m : it.next().methods) {
-                aIns = ((MethodNode) m).instructions;
-                mI = new InstructionIdentifier(aIns.toArray()).getInstList();
-                Collections.addAll(ins, mI.toArray(new String[mI.size()]));
-            }
-        return ins.toArray(new String[ins.size()]);
-    }
-
     public boolean isHaltRequested() {
         return haltRequested;
     }
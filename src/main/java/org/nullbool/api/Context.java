@@ -1,19 +1,23 @@
 package org.nullbool.api;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * A static registry-type structure to allow easy binding and unbinding
  * as well as current context retrieval. <br>
  * 
- * An internal Map populated by {@link Thread} objects linked with 
- * {@link AbstractAnalysisProvider}s is held and is pollable using the
- * {@link #current()} method, which MUST be called from the same Thread
- * that the provider was registered from. <br>
+ * The provider is held in an {@link InheritableThreadLocal}, so it can be
+ * polled with the {@link #current()} method without any locking, from the
+ * Thread that it was binded on or from any Thread started by it. Several
+ * providers can therefore be run at the same time on different Threads. <br>
  * 
  * Data can be binded using the {@link #bind(AbstractAnalysisProvider)} method
- * and can then be unbinded with {@link #unbind()}. <br>
+ * and can then be unbinded with {@link #unbind()}. Work that is given to other
+ * Threads can be run in the same context by wrapping it with {@link #wrap(Runnable)},
+ * and pools that are created with {@link #workerFactory(AbstractAnalysisProvider)}
+ * bind every worker to the provider. <br>
  * 
  * A utility method {@link #block()} is defined to allow a Thread to wait or 'block'
  * until either the latest provider has been binded.
@@ -23,7 +27,7 @@ import java.util.Map;
  */
 public class Context {
 
-	private static final Map<Thread, AbstractAnalysisProvider> binded = new HashMap<Thread, AbstractAnalysisProvider>();
+	private static final InheritableThreadLocal<Binding> binded = new InheritableThreadLocal<Binding>();
 
 	/**
 	 * Waits on the current Thread until either the provider that
@@ -31,49 +35,45 @@ public class Context {
 	 * until the method times out (25,000 ms).
 	 */
 	public static void block() {
-		synchronized (binded) {
-			final long startTime = System.currentTimeMillis();
-			final Thread thread = Thread.currentThread();
-			while(true) {
-				if(binded.containsKey(thread))
-					break;
-				
-				long now = System.currentTimeMillis();
-				long d   = now - startTime;
-				if(d >= 25000) {
-					throw new RuntimeException("Timed out.");
-				}
-				try {
-					Thread.sleep(250);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+		final long startTime = System.currentTimeMillis();
+		while(true) {
+			if(current() != null)
+				break;
+			
+			long now = System.currentTimeMillis();
+			long d   = now - startTime;
+			if(d >= 25000) {
+				throw new RuntimeException("Timed out.");
+			}
+			try {
+				Thread.sleep(250);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted.", e);
 			}
 		}
 	}
 	
 	/**
-	 * Maps the current Thread with the provider or throws a RuntimeException
-	 * if the current thread is already binded.
+	 * Binds the provider to the current Thread or throws a RuntimeException
+	 * if the current thread is already binded. A provider that was only
+	 * inherited from the parent Thread can be replaced.
 	 * @param provider
 	 */
 	public static void bind(AbstractAnalysisProvider provider) {
-		synchronized (binded) {
-			Thread thread = Thread.currentThread();
-			if(binded.containsKey(thread))
-				throw new RuntimeException("A provider is already binded to this thread!");
-			
-			binded.put(thread, provider);	
-		}
+		Thread thread = Thread.currentThread();
+		Binding b = binded.get();
+		if(b != null && b.thread == thread)
+			throw new RuntimeException("A provider is already binded to this thread!");
+		
+		binded.set(new Binding(provider, thread));
 	}
 
 	/**
-	 * Removes the current Thread (and thus provider) from the map.
+	 * Removes the provider from the current Thread.
 	 */
 	public static void unbind() {
-		synchronized (binded) {
-			binded.remove(Thread.currentThread());
-		}
+		binded.remove();
 	}
 
 	/**
@@ -81,8 +81,57 @@ public class Context {
 	 * @return An AbstractAnalysisProvider or null.
 	 */
 	public static AbstractAnalysisProvider current() {
-		synchronized (binded) {
-			return binded.get(Thread.currentThread());
+		Binding b = binded.get();
+		return b != null ? b.provider : null;
+	}
+	
+	/**
+	 * Wraps a task so that it runs with the provider of the calling Thread,
+	 * on whichever Thread it is eventually run. Whatever was binded on
+	 * that Thread before is put back afterwards.
+	 * @param task
+	 * @return The wrapped task.
+	 */
+	public static Runnable wrap(Runnable task) {
+		final AbstractAnalysisProvider provider = current();
+		return () -> {
+			Binding old = binded.get();
+			binded.set(new Binding(provider, Thread.currentThread()));
+			try {
+				task.run();
+			} finally {
+				if(old != null) {
+					binded.set(old);
+				} else {
+					binded.remove();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Creates the workers of a {@link ForkJoinPool} that are binded to the
+	 * provider for as long as they are alive.
+	 * @param provider
+	 * @return A factory to give to the pool.
+	 */
+	public static ForkJoinWorkerThreadFactory workerFactory(AbstractAnalysisProvider provider) {
+		return pool -> new ForkJoinWorkerThread(pool) {
+			@Override
+			protected void onStart() {
+				super.onStart();
+				bind(provider);
+			}
+		};
+	}
+	
+	private static class Binding {
+		private final AbstractAnalysisProvider provider;
+		private final Thread thread;
+		
+		public Binding(AbstractAnalysisProvider provider, Thread thread) {
+			this.provider = provider;
+			this.thread = thread;
 		}
 	}
 }
\ No newline at end of file
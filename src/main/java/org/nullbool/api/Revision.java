@@ -3,7 +3,6 @@ package org.nullbool.api;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
-import java.util.jar.JarFile;
 
 import org.nullbool.api.util.JarParser;
 import org.objectweb.custom_asm.tree.ClassNode;
@@ -38,10 +37,20 @@ public class Revision {
 	 * @throws IOException
 	 */
 	public Map<String, ClassNode> parse() throws IOException {
-		return new JarParser(new JarFile(dataFile)).getParsedClasses();
+		return load().getParsedClasses();
 		// return (Map) ClassRepository.fromJar(dataFile);
 	}
 
+	/**
+	 * Parses the dataFile like {@link #parse()}, but returns the parser, which
+	 * also has the time that each phase of the loading took.
+	 * @return The parser.
+	 * @throws IOException
+	 */
+	public JarParser load() throws IOException {
+		return new JarParser(dataFile);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
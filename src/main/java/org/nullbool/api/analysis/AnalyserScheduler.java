@@ -0,0 +1,216 @@
+package org.nullbool.api.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import org.nullbool.api.Context;
+import org.objectweb.custom_asm.tree.ClassNode;
+
+/**
+ * Orders {@link ClassAnalyser}s by the analysers that they depend on
+ * (see {@link SupportedHooks#depends()}) and finds their classes. <br>
+ *
+ * When running in parallel, the analysers are split into levels where every
+ * analyser only depends on analysers in the levels before it. Each level keeps
+ * the order that the analysers were registered in and all of the analysers in
+ * a level search the classes at the same time. When running sequentially,
+ * every analyser gets a level of its own in the order they were registered
+ * in. <br>
+ *
+ * Either way, an analyser that looks up another one before it has been
+ * identified fails with a {@link MissingDependencyException}. <br>
+ *
+ * Once the classes are found, {@link #runSubs(List, ForkJoinPool)} runs the
+ * sub analysers of each ClassAnalyser as soon as the analysers whose hooks it
+ * uses (see {@link SupportedHooks#uses()}) have finished.
+ */
+public class AnalyserScheduler {
+
+	private final List<List<ClassAnalyser>> levels;
+
+	public AnalyserScheduler(List<ClassAnalyser> analysers, boolean parallel) throws AnalysisException {
+		if (parallel) {
+			levels = sort(analysers, ClassAnalyser::dependencies);
+		} else {
+			List<List<ClassAnalyser>> single = new ArrayList<List<ClassAnalyser>>();
+			for (ClassAnalyser a : analysers) {
+				single.add(Collections.singletonList(a));
+			}
+			levels = Collections.unmodifiableList(single);
+		}
+	}
+
+	public List<List<ClassAnalyser>> getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Finds the classes of every analyser in a level. Exceptions thrown by an
+	 * analyser are printed and leave the analyser without a class, apart from
+	 * a {@link MissingDependencyException}, which is rethrown.
+	 *
+	 * @param level The analysers to run.
+	 * @param classes The classes to search.
+	 * @param pool The pool to search with or null to run on the current thread.
+	 *        Its workers have to be binded to the provider (see {@link Context#workerFactory}).
+	 */
+	public void identify(List<ClassAnalyser> level, Map<String, ClassNode> classes, ForkJoinPool pool) {
+		if (pool == null || level.size() == 1) {
+			for (ClassAnalyser a : level) {
+				identify(a, classes);
+			}
+		} else {
+			invoke(level, classes, pool);
+		}
+
+		/* Only marked once the whole level is done, so that looking up an
+		 * analyser in the same level always fails, not just when it loses
+		 * the race. */
+		for (ClassAnalyser a : level) {
+			a.setIdentified();
+		}
+	}
+
+	private static void invoke(List<ClassAnalyser> level, Map<String, ClassNode> classes, ForkJoinPool pool) {
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (ClassAnalyser a : level) {
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					identify(a, classes);
+				}
+			});
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	private static void identify(ClassAnalyser a, Map<String, ClassNode> classes) {
+		try {
+			a.preRun(classes);
+		} catch (MissingDependencyException e) {
+			throw e;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs the field, method and multi analysers of every ClassAnalyser. Each
+	 * ClassAnalyser still runs its own sub analysers in order, so the hooks of
+	 * a class are always added in the same order. Exceptions thrown by an
+	 * analyser are printed like in {@link #identify(List, Map, ForkJoinPool)},
+	 * apart from a {@link MissingDependencyException}, which is rethrown.
+	 *
+	 * @param analysers The analysers, whose classes have been found.
+	 * @param pool The pool to run on.
+	 */
+	public void runSubs(List<ClassAnalyser> analysers, ForkJoinPool pool) throws AnalysisException {
+		Map<String, ClassAnalyser> names = names(analysers);
+		Map<ClassAnalyser, CompletableFuture<Void>> tasks = new HashMap<ClassAnalyser, CompletableFuture<Void>>();
+		List<CompletableFuture<Void>> all = new ArrayList<CompletableFuture<Void>>();
+		/* Going through the levels means that the tasks of the used analysers
+		 * have always been created first. */
+		for (List<ClassAnalyser> level : sort(analysers, ClassAnalyser::usedHooks)) {
+			for (ClassAnalyser a : level) {
+				List<CompletableFuture<Void>> used = new ArrayList<CompletableFuture<Void>>();
+				for (String name : a.usedHooks()) {
+					ClassAnalyser dep = names.get(name);
+					if (dep != null && dep != a)
+						used.add(tasks.get(dep));
+				}
+
+				CompletableFuture<Void> after = CompletableFuture.allOf(used.toArray(new CompletableFuture<?>[0]));
+				CompletableFuture<Void> task = after.thenRunAsync(Context.wrap(() -> runSubs(a)), pool);
+				tasks.put(a, task);
+				all.add(task);
+			}
+		}
+
+		try {
+			CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof MissingDependencyException)
+				throw (MissingDependencyException) e.getCause();
+			throw e;
+		}
+	}
+
+	private static void runSubs(ClassAnalyser a) {
+		try {
+			a.runSubs();
+		} catch (MissingDependencyException e) {
+			throw e;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static Map<String, ClassAnalyser> names(List<ClassAnalyser> analysers) {
+		Map<String, ClassAnalyser> names = new HashMap<String, ClassAnalyser>();
+		for (ClassAnalyser a : analysers) {
+			names.put(a.getName(), a);
+		}
+		return names;
+	}
+
+	private static List<List<ClassAnalyser>> sort(List<ClassAnalyser> analysers, Function<ClassAnalyser, String[]> edges) throws AnalysisException {
+		Map<String, ClassAnalyser> names = names(analysers);
+		Map<ClassAnalyser, Integer> depths = new HashMap<ClassAnalyser, Integer>();
+		List<List<ClassAnalyser>> levels = new ArrayList<List<ClassAnalyser>>();
+		for (ClassAnalyser a : analysers) {
+			int depth = depth(a, edges, names, depths, new HashSet<ClassAnalyser>());
+			while (levels.size() <= depth) {
+				levels.add(new ArrayList<ClassAnalyser>());
+			}
+			levels.get(depth).add(a);
+		}
+
+		List<List<ClassAnalyser>> sorted = new ArrayList<List<ClassAnalyser>>();
+		for (List<ClassAnalyser> level : levels) {
+			sorted.add(Collections.unmodifiableList(level));
+		}
+		return Collections.unmodifiableList(sorted);
+	}
+
+	private static int depth(ClassAnalyser a, Function<ClassAnalyser, String[]> edges, Map<String, ClassAnalyser> names, Map<ClassAnalyser, Integer> depths,
+			Set<ClassAnalyser> visiting) throws AnalysisException {
+		Integer depth = depths.get(a);
+		if (depth != null)
+			return depth;
+
+		if (!visiting.add(a))
+			throw new AnalysisException("Cyclic analyser dependency on " + a.getName());
+
+		int max = 0;
+		for (String name : edges.apply(a)) {
+			ClassAnalyser dep = names.get(name);
+			/* Analysers that aren't registered for this revision can't be waited on. */
+			if (dep != null && dep != a)
+				max = Math.max(max, depth(dep, edges, names, depths, visiting) + 1);
+		}
+
+		visiting.remove(a);
+		depths.put(a, max);
+		return max;
+	}
+}
@@ -3,6 +3,7 @@ package org.nullbool.api.analysis;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -14,9 +15,14 @@ import java.util.stream.Stream;
 import org.nullbool.api.AbstractAnalysisProvider;
 import org.nullbool.api.Builder;
 import org.nullbool.api.Context;
-import org.nullbool.api.util.BoundedInstructionIdentifier;
 import org.nullbool.api.util.BoundedInstructionIdentifier.DataPoint;
-import org.nullbool.api.util.InstructionIdentifier;
+import org.nullbool.api.util.BoundedInstructionIdentifier.ExplicitDataPoint;
+import org.nullbool.api.util.InstructionCache;
+import org.nullbool.api.util.InstructionIndex;
+import org.nullbool.api.util.InstructionIndex.Style;
+import org.nullbool.api.util.OpcodePattern;
+import org.nullbool.api.util.ReferenceIndex;
+import org.nullbool.api.util.ReferenceIndex.Site;
 import org.nullbool.pi.core.hook.api.ClassHook;
 import org.nullbool.pi.core.hook.api.Constants;
 import org.nullbool.pi.core.hook.api.FieldHook;
@@ -41,13 +47,30 @@ public abstract class ClassAnalyser implements Opcodes {
 	private final String name;
 	private ClassNode foundClass;
 	private ClassHook foundHook;
+	private volatile boolean identified;
 
 	public ClassAnalyser(String name) {
 		this.name = name;
 	}
 
 	public void preRun(Map<String, ClassNode> classes) throws AnalysisException {
-		foundClass = analyse(classes);
+		setFoundClass(identify(classes.values()));
+	}
+
+	/**
+	 * @return Whether the {@link AnalyserScheduler} has finished the level of
+	 *         this analyser, even if no class was found.
+	 */
+	public boolean isIdentified() {
+		return identified;
+	}
+
+	void setIdentified() {
+		identified = true;
+	}
+
+	public void setFoundClass(ClassNode cn) {
+		foundClass = cn;
 		if (foundClass != null)
 			foundHook = new ClassHook(foundClass.name, name);
 	}
@@ -140,17 +163,59 @@ public abstract class ClassAnalyser implements Opcodes {
 		return getSupportedHooksAnno().methods();
 	}
 
-	private ClassNode analyse(Map<String, ClassNode> classes) throws AnalysisException {
-		ClassNode f_cn = null;
-		for (ClassNode cn : classes.values()) {
-			boolean match = matches(cn);
-			if (match && f_cn != null) {
-				throw new AnalysisException("Found twice.");
-			} else if (match) {
-				return cn;
+	public String[] dependencies() {
+		SupportedHooks anno = getSupportedHooksAnno();
+		return anno != null ? anno.depends() : new String[0];
+	}
+
+	public String[] usedHooks() {
+		SupportedHooks anno = getSupportedHooksAnno();
+		return anno != null ? anno.uses() : new String[0];
+	}
+
+	/**
+	 * Tests every class with {@link #matches(ClassNode)} and returns the first
+	 * one that matches. If more than one class matches, the others are reported
+	 * and the first is still used.
+	 * 
+	 * @param classes The classes to search.
+	 * @return The first matching class or null.
+	 */
+	public ClassNode identify(Collection<ClassNode> classes) {
+		List<ClassNode> found = new ArrayList<ClassNode>();
+		ClassNode last = null;
+		for (ClassNode cn : classes) {
+			last = cn;
+			try {
+				if (matches(cn))
+					found.add(cn);
+			} catch (RuntimeException e) {
+				/* The classes after the first match were only checked for
+				 * duplicates, so a failure there doesn't lose the match. */
+				if (found.isEmpty() || e instanceof MissingDependencyException)
+					throw e;
+				System.err.println(name + " stopped checking for duplicates at " + cn.name + " -> " + e.getClass().getSimpleName());
+				break;
 			}
 		}
-		return null;
+
+		if (found.isEmpty())
+			return null;
+
+		ClassNode cn = found.get(0);
+		if (found.size() > 1) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 1; i < found.size(); i++) {
+				sb.append(i == 1 ? "" : ", ").append(found.get(i).name);
+			}
+			System.err.printf("%s matched %d classes, using %s over %s.%n", name, found.size(), cn.name, sb);
+		}
+
+		/* Some analysers keep data about the class they last matched, so make
+		 * sure that it's the one that was chosen. */
+		if (last != cn)
+			matches(cn);
+		return cn;
 	}
 
 	protected abstract boolean matches(ClassNode cn);
@@ -180,35 +245,55 @@ public abstract class ClassAnalyser implements Opcodes {
 	}
 
 	public List<String> getCleanList(MethodNode node) {
-		List<String> opList = new ArrayList<String>();
-		AbstractInsnNode[] ins = node.instructions.toArray();
-		Stream<String> s = new InstructionIdentifier(ins).getInstCleanList().stream();
-		s = s.filter(n -> (n != null) && !n.trim().equalsIgnoreCase("f_new"));
-		s.forEach(n -> opList.add(n));
-		return opList;
+		return instructions(node).getInstCleanList();
+	}
+
+	/**
+	 * @return The instructions of the method, indexed for the pattern helpers.
+	 *         The index is shared through the provider's {@link InstructionCache}.
+	 */
+	public InstructionIndex instructions(MethodNode m) {
+		InstructionCache cache = Context.current().getInstructionCache();
+		return cache != null ? cache.get(m) : new InstructionIndex(m);
 	}
 
 	public String findObfClassName(String n) {
+		checkIdentified(n);
 		AbstractAnalysisProvider provider = Context.current();
 		// System.out.println(provider.getAnalysers());
 		Stream<ClassAnalyser> stream = provider.getAnalysers().stream();
-		stream = stream.filter(a -> a.foundHook.refactored().equals(n));
+		stream = stream.filter(a -> a.foundHook != null && a.foundHook.refactored().equals(n));
 		ClassAnalyser a = stream.findFirst().orElse(null);
 		return a != null ? a.foundHook.obfuscated() : null;
 	}
 
+	/**
+	 * @param name The name of the analyser.
+	 * @return The analyser, or null if it isn't registered.
+	 * @throws MissingDependencyException If the analyser hasn't finished
+	 *         identifying its class yet.
+	 */
 	public ClassAnalyser getAnalyser(String name) {
 		for (ClassAnalyser a : Context.current().getAnalysers()) {
-			if (a.getName().equals(name))
+			if (a.getName().equals(name)) {
+				if (!a.isIdentified())
+					throw new MissingDependencyException(this.name, name);
 				return a;
+			}
 		}
 		return null;
 	}
 
+	private void checkIdentified(String name) {
+		if (!name.equals(this.name))
+			getAnalyser(name);
+	}
+
 	public ClassNode getClassNodeByRefactoredName(String name) {
+		checkIdentified(name);
 		AbstractAnalysisProvider provider = Context.current();
 		Stream<ClassAnalyser> stream = provider.getAnalysers().stream();
-		stream = stream.filter(a -> a.foundHook.refactored().equals(name));
+		stream = stream.filter(a -> a.foundHook != null && a.foundHook.refactored().equals(name));
 		ClassAnalyser a = stream.findFirst().orElse(null);
 		if (a == null || a.foundHook == null)
 			return null;
@@ -294,209 +379,77 @@ public abstract class ClassAnalyser implements Opcodes {
 
 	public List<DataPoint> pointsOf(MethodNode m, String... pattern) {
 		List<DataPoint> points = new ArrayList<DataPoint>();
-		// TODO: Find from cache
-		BoundedInstructionIdentifier i = new BoundedInstructionIdentifier(m.instructions.toArray());
-		int count = 0;
-		DataPoint start = null;
-		String secondIn;
-		int size = pattern.length;
-
-		List<DataPoint> opcodeList = i.getPoints();
-		if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-			for (int x = 0; x <= (opcodeList.size() - size); x++) {
-				for (int index = 0; index < size; index++) {
-					DataPoint firstIn = opcodeList.get(x + index);
-					if(start == null) {
-						start = firstIn;
-					}
-					secondIn = pattern[index];
-					count += firstIn.toString().matches(secondIn) ? 1 : 0;
-
-					// System.out.printf("[%b] %s matches %s.%n", firstIn.toString().matches(secondIn), firstIn, secondIn);
-
-				}
-				if(size == count) // if the size == count return true (found)
-					points.add(start);
-
-				count = 0;
-				start = null;
-			}
+		InstructionIndex index = instructions(m);
+		OpcodePattern p = OpcodePattern.compile(Style.BOUNDED, pattern);
+		for (int x = p.find(index, 0); x != -1; x = p.find(index, x + 1)) {
+			points.add(new ExplicitDataPoint(index.insn(x)));
 		}
-
 		return points;
 	}
 
 	public DataPoint pointOf(MethodNode m, String... pattern) {
-		// TODO: Find from cache
-		BoundedInstructionIdentifier i = new BoundedInstructionIdentifier(m.instructions.toArray());
-		int count = 0;
-		DataPoint start = null;
-		String secondIn;
-		int size = pattern.length;
-
-		List<DataPoint> opcodeList = i.getPoints();
-		if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-			for (int x = 0; x <= (opcodeList.size() - size); x++) {
-				for (int index = 0; index < size; index++) {
-					DataPoint firstIn = opcodeList.get(x + index);
-					if(start == null) {
-						start = firstIn;
-					}
-					secondIn = pattern[index];
-					count += firstIn.toString().matches(secondIn) ? 1 : 0;
-
-					// System.out.printf("[%b] %s matches %s.%n", firstIn.toString().matches(secondIn), firstIn, secondIn);
-
-				}
-				if(size == count) // if the size == count return true (found)
-					return start;
-
-				count = 0;
-				start = null;
-			}
-		}
-
-		return null;
+		InstructionIndex index = instructions(m);
+		int x = OpcodePattern.compile(Style.BOUNDED, pattern).find(index, 0);
+		return x != -1 ? new ExplicitDataPoint(index.insn(x)) : null;
 	}
 
 	public boolean identifyMethod(MethodNode methodNode,  String... pattern) {
-		int count = 0;
-		String firstIn, secondIn;
-		int size = pattern.length;
-
-		InstructionIdentifier i = new InstructionIdentifier(methodNode.instructions.toArray());
-		List<String> opcodeList = i.getInstList();
-		if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-			for (int x = 0; x <= (opcodeList.size() - size); x++) {
-				for (int index = 0; index < size; index++) {
-					firstIn = opcodeList.get(x + index);
-					secondIn = pattern[index];
-					count += firstIn.matches(secondIn) ? 1 : 0;
-
-					 // System.out.printf("[%b] %s matches %s.%n", firstIn.toString().matches(secondIn), firstIn, secondIn);
-
-				}
-				if(size == count) // if the size == count return true (found)
-					return true;
-
-				count = 0;
-			}
-		}
-
-		return false;
+		return OpcodePattern.compile(Style.FULL, pattern).find(instructions(methodNode), 0) != -1;
 	}
 
 	public MethodNode identifyMethod(MethodNode[] methodNodes,  String... pattern) {
-		int count = 0;
-		InstructionIdentifier i;
-		String firstIn, secondIn;
 		MethodNode result = null;
-		List<String> opcodeList;
 		int size = pattern.length;
 
+		/* The instructions are the regexes here, so they can't be compiled up front. */
 		for (MethodNode methodNode : methodNodes) {
-			i = new InstructionIdentifier(methodNode.instructions.toArray());
-			opcodeList = i.getInstList();
-			if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-				for (int x = 0; x <= (opcodeList.size() - size); x++) {
-					for (int index = 0; index < size; index++) {
-						firstIn = opcodeList.get(x + index);
-						secondIn = pattern[index];
-						count += secondIn.matches(firstIn) ? 1 : 0;
-					}
-					result = size == count ? methodNode : result; // if size == count then set the result to the current method
-					count = 0;
+			InstructionIndex index = instructions(methodNode);
+			for (int x = 0; x <= (index.size() - size); x++) {
+				int count = 0;
+				for (int y = 0; y < size; y++) {
+					count += pattern[y].matches(index.text(x + y, Style.FULL)) ? 1 : 0;
 				}
+				result = size == count ? methodNode : result;
 			}
 		}
 		return result;
 	}
 
 	public MethodNode identifyMethod(MethodNode[] methodNodes, boolean clean, String... pattern) {
-		int count = 0;
-		InstructionIdentifier i;
-		String firstIn, secondIn;
 		MethodNode result = null;
-		List<String> opcodeList;
-		int size = pattern.length;
-
+		OpcodePattern p = OpcodePattern.compileExact(clean ? Style.CLEAN : Style.FULL, pattern);
 		for (MethodNode methodNode : methodNodes) {
-			i = new InstructionIdentifier(methodNode.instructions.toArray());
-			opcodeList = clean ? i.getInstCleanList() : i.getInstList();
-			if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-				for (int x = 0; x <= (opcodeList.size() - size); x++) {
-					for (int index = 0; index < size; index++) {
-						firstIn = opcodeList.get(x + index);
-						secondIn = pattern[index];
-						count += secondIn.equals(firstIn) ? 1 : 0;
-					}
-					result = size == count ? methodNode : result;
-					count = 0;
-				}
-			}
+			if (p.find(instructions(methodNode), 0) != -1)
+				result = methodNode;
 		}
 		return result;
 	}
 
 	public boolean findMethod(ClassNode cn, MethodNode m, String... pattern) {
-		int count = 0;
-		boolean p = false;
-		String firstIn, secondIn;
-		List<String> opcodeList;
-		int size = pattern.length;
-
-		opcodeList = getCleanList(m);
-		if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-			for (int x = 0; x <= (opcodeList.size() - size); x++) {
-				for (int index = 0; index < size; index++) {
-					firstIn = opcodeList.get(x + index);
-					secondIn = pattern[index];
-					count += secondIn.equals(firstIn) ? 1 : 0;
-				}
-				p = size == count ? true : p;
-				count = 0;
-			}
-
-		}
-		return p;
+		return OpcodePattern.compileExact(Style.CLEAN, pattern).find(instructions(m), 0) != -1;
 	}
 
 	public boolean findMethod(ClassNode cn, String mName, String... pattern) {
-		int count = 0;
-		boolean p = false;
-		String firstIn, secondIn;
-		List<String> opcodeList;
-		int size = pattern.length;
-
+		OpcodePattern p = OpcodePattern.compileExact(Style.CLEAN, pattern);
 		for (MethodNode method : cn.methods) {
-			if (method.name.toLowerCase().contains(mName)) {
-				opcodeList = getCleanList(method);
-				if ((opcodeList.size() > 0) && ((opcodeList.size() - size) >= 0)) {
-					for (int x = 0; x <= (opcodeList.size() - size); x++) {
-						for (int index = 0; index < size; index++) {
-							firstIn = opcodeList.get(x + index);
-							secondIn = pattern[index];
-							count += secondIn.equals(firstIn) ? 1 : 0;
-						}
-						p = size == count ? true : p;
-						count = 0;
-					}
-				}
-			}
+			if (method.name.toLowerCase().contains(mName) && p.find(instructions(method), 0) != -1)
+				return true;
 		}
-		return p;
+		return false;
 	}
 
 	public String identify(ClassNode cn, String type, char c) {
-		for (Object methodNode : cn.methods) {
-			MethodNode m = (MethodNode) methodNode;
-			InstructionIdentifier i = new InstructionIdentifier(m.instructions.toArray());
-			String hook;
-			Stream<String> s = i.getInstList().stream();
-			s = s.filter(k -> k.startsWith("put" + c) | k.startsWith("get" + c));
-			s = s.filter(ins -> ins.split(" ")[2].trim().equalsIgnoreCase(type));
-			if ((hook = s.findFirst().orElse(null)) != null)
-				return hook.split(" ")[1].trim();
+		String put = "put" + c, get = "get" + c;
+		for (MethodNode m : cn.methods) {
+			InstructionIndex index = instructions(m);
+			for (int i = 0; i < index.size(); i++) {
+				String name = InstructionIndex.NAMES[index.opcode(i)];
+				if (!name.startsWith(put) && !name.startsWith(get))
+					continue;
+				String[] parts = index.text(i, Style.FULL).split(" ");
+				if (parts[2].trim().equalsIgnoreCase(type))
+					return parts[1].trim();
+			}
 		}
 		return null;
 	}
@@ -627,6 +580,10 @@ public abstract class ClassAnalyser implements Opcodes {
 	}
 
 	public MethodNode[] findMethods(Map<String, ClassNode> nodes, String regularExpression, boolean isStatic) {
+		ReferenceIndex index = Context.current().getReferenceIndex();
+		if (index != null && index.isOf(nodes))
+			return index.getMethods(regularExpression, isStatic);
+
 		List<MethodNode> methods = new ArrayList<MethodNode>();
 		Iterator<ClassNode> n = nodes.values().iterator();
 		while (n.hasNext()) {
@@ -641,113 +598,133 @@ public abstract class ClassAnalyser implements Opcodes {
 		return methods.toArray(new MethodNode[methods.size()]);
 	}
 
+	/**
+	 * @return The instructions that get or put the field (see {@link ReferenceIndex}).
+	 */
+	public List<Site> getFieldSites(String owner, String name, String desc) {
+		return Context.current().getReferenceIndex().getFieldSites(owner, name, desc);
+	}
+
+	/**
+	 * @return The instructions that call the method.
+	 */
+	public List<Site> getMethodSites(String owner, String name, String desc) {
+		return Context.current().getReferenceIndex().getMethodSites(owner, name, desc);
+	}
+
+	/**
+	 * @return The field and method instructions with the descriptor.
+	 */
+	public List<Site> getDescSites(String desc) {
+		return Context.current().getReferenceIndex().getDescSites(desc);
+	}
+
+	/**
+	 * @return The ldc instructions that load the constant.
+	 */
+	public List<Site> getLdcSites(Object cst) {
+		return Context.current().getReferenceIndex().getLdcSites(cst);
+	}
+
+	/**
+	 * @return The instructions that push the int.
+	 */
+	public List<Site> getConstantSites(int n) {
+		return Context.current().getReferenceIndex().getConstantSites(n);
+	}
+
+	/**
+	 * @return The methods that the sites are in, in order and without duplicates.
+	 */
+	public List<MethodNode> methodsOf(List<Site> sites) {
+		return ReferenceIndex.methods(sites);
+	}
+
 	public MethodNode[] startWithBc(String[] pat, MethodNode... methodsNodes) {
-		int insCounter = 0;
-		boolean condition = false;
-		List<String> opcodeList;
+		OpcodePattern p = OpcodePattern.compileExact(Style.CLEAN, pat);
 		List<MethodNode> methods = new ArrayList<MethodNode>();
 		for (MethodNode methodNode : methodsNodes) {
-			insCounter = 0;
-			opcodeList = getCleanList(methodNode);
-			condition = methodNode.instructions.size() > 10;
-			for (int i = 0; (i < pat.length) && condition; i++)
-				insCounter += opcodeList.get(i).equals(pat[i]) ? 1 : 0;
-			if ((pat.length == insCounter) && condition)
+			if (methodNode.instructions.size() > 10 && p.matches(instructions(methodNode), 0))
 				methods.add(methodNode);
 		}
 		return methods.toArray(new MethodNode[methods.size()]);
 	}
 
 	public String findNearIns(MethodNode mNode, String ins, String s, String e) {
-		String firstIns, secondIns, fullIns, fieldSource = null;
-		InstructionIdentifier f = new InstructionIdentifier(mNode.instructions.toArray());
-		List<String> instructionsList = f.getInstCleanList();
-		int index = instructionsList.indexOf(ins);
-		int max = (instructionsList.size() / 2) - 1;
-		for (int x = 1; x <= max; x++) {
-			firstIns = instructionsList.get(index + x);
-			secondIns = instructionsList.get(index - x);
-			if (firstIns.startsWith(s) || firstIns.startsWith(e)) {
-				fullIns = f.getInstList().get(index + x);
-				fieldSource = fullIns.split(" ")[1];
-				break;
-			}
-			if (secondIns.startsWith(s) || secondIns.startsWith(e)) {
-				fullIns = f.getInstList().get(index - x);
-				fieldSource = fullIns.split(" ")[1];
+		InstructionIndex f = instructions(mNode);
+		int index = -1;
+		for (int i = 0; i < f.size(); i++) {
+			if (InstructionIndex.NAMES[f.opcode(i)].equals(ins)) {
+				index = i;
 				break;
 			}
 		}
-		return fieldSource;
+
+		int max = (f.size() / 2) - 1;
+		for (int x = 1; x <= max; x++) {
+			String firstIns = InstructionIndex.NAMES[f.opcode(index + x)];
+			String secondIns = InstructionIndex.NAMES[f.opcode(index - x)];
+			if (firstIns.startsWith(s) || firstIns.startsWith(e))
+				return f.text(index + x, Style.FULL).split(" ")[1];
+			if (secondIns.startsWith(s) || secondIns.startsWith(e))
+				return f.text(index - x, Style.FULL).split(" ")[1];
+		}
+		return null;
 	}
 
 	public String findField(MethodNode method, boolean rawInsnList, boolean jumpForward, int position, char type, String... pattern) {
-		return findField(method.instructions.toArray(), rawInsnList, jumpForward, position, type, pattern);
+		return findField(instructions(method), rawInsnList, jumpForward, position, type, pattern);
 	}
 
 	public String findField(AbstractInsnNode[] instructions, boolean rawInsnList, boolean jumpForward, int position, char type, String... pattern) {
+		return findField(new InstructionIndex(instructions), rawInsnList, jumpForward, position, type, pattern);
+	}
+
+	private String findField(InstructionIndex f, boolean rawInsnList, boolean jumpForward, int position, char type, String... pattern) {
 		int counter = 0;
 		String get = "get" + type;
 		String put = "put" + type;
-		InstructionIdentifier f = new InstructionIdentifier(instructions);
-		List<String> insnList = rawInsnList ? f.getInstList() : f.getInstCleanList();
-		for (int i = getIndex(insnList, pattern); (i >= 0) && (i < insnList.size()); i += jumpForward ? 1 : -1) {
-			if (insnList.get(i).startsWith(get) || insnList.get(i).startsWith(put)) {
+		for (int i = getIndex(f, rawInsnList ? Style.FULL : Style.CLEAN, pattern); (i >= 0) && (i < f.size()); i += jumpForward ? 1 : -1) {
+			String name = InstructionIndex.NAMES[f.opcode(i)];
+			if (name.startsWith(get) || name.startsWith(put)) {
 				if (++counter == position)
-					return f.getInstList().get(i).split(" ")[1];
+					return f.text(i, Style.FULL).split(" ")[1];
 			}
 		}
 		return null;
 	}
 
 	public String findField2(MethodNode m, String insName, String... pattern) {
-		InstructionIdentifier f = new InstructionIdentifier(m.instructions.toArray());
-		List<String> i = f.getInstList();
-		for (int x = getIndex(i, pattern); x < i.size(); x++)
-			if (x > 0 && i.get(x).matches(insName))
-				return f.getInstList().get(x).split(" ")[1];
+		InstructionIndex f = instructions(m);
+		OpcodePattern ins = OpcodePattern.compile(Style.FULL, insName);
+		for (int x = getIndex(f, Style.FULL, pattern); x < f.size(); x++)
+			if (x > 0 && ins.matches(f, x))
+				return f.text(x, Style.FULL).split(" ")[1];
 		return null;
 	}
 
 	public String findField(MethodNode m, String insName, String pattern) {
-		InstructionIdentifier f = new InstructionIdentifier(m.instructions.toArray());
-		List<String> i = f.getInstList();
-		for (int x = getIndex(i, pattern); x < i.size(); x++)
-			if (i.get(x).matches(insName)) {
-				return f.getInstList().get(x).split(" ")[1];
-			}
-		return null;
+		return findField3(m, 1, insName, pattern);
 	}
 
 	public String findField3(MethodNode m, int match, String insName, String pattern) {
 		int c = 0;
-		InstructionIdentifier f = new InstructionIdentifier(m.instructions.toArray());
-		List<String> i = f.getInstList();
-		for (int x = getIndex(i, pattern); x < i.size(); x++)
-			if (i.get(x).matches(insName)) {
+		InstructionIndex f = instructions(m);
+		OpcodePattern ins = OpcodePattern.compile(Style.FULL, insName);
+		for (int x = getIndex(f, Style.FULL, pattern); x < f.size(); x++)
+			if (ins.matches(f, x)) {
 				c++;
-				// System.out.println("match: " + i.get(x));
 				if (match == c) {
-					return f.getInstList().get(x).split(" ")[1];
+					return f.text(x, Style.FULL).split(" ")[1];
 				}
 			}
 		return null;
 	}
 
-	private int getIndex(List<String> ins, String... pat) {
-		String firstIn, secondIn;
-		int count = 0, index = -1;
-		int size = ins.size() - pat.length;
-		for (int x = 0; (x < size) && (index == -1); x++) {
-			for (int y = 0; y < pat.length; y++) {
-				firstIn = pat[y];
-				secondIn = ins.get(x + y);
-				count += secondIn.matches(firstIn) ? 1 : 0;
-			}
-			index = pat.length == count ? x : index;
-			count = 0;
-		}
-		return index;
+	/* The pattern is never matched at the very end of the instructions. */
+	private int getIndex(InstructionIndex ins, Style style, String... pat) {
+		int index = OpcodePattern.compile(style, pat).find(ins, 0);
+		return index < (ins.size() - pat.length) ? index : -1;
 	}
 
 	public AbstractInsnNode[] followJump(MethodNode node, int maxGoto) {
@@ -771,13 +748,9 @@ public abstract class ClassAnalyser implements Opcodes {
 	}
 
 	public int index(MethodNode node, String s) {
-		int index = 0;
-		InstructionIdentifier id = new InstructionIdentifier(node.instructions.toArray());
-		List<String> instructions = id.getInstList();
-		for (int x = 0; (x < instructions.size()) && (index == 0); x++)
-			if (instructions.get(x).matches(s))
-				index = x;
-		return index;
+		/* A match on the first instruction is passed over. */
+		int index = OpcodePattern.compile(Style.FULL, s).find(instructions(node), 1);
+		return index != -1 ? index : 0;
 	}
 
 	public long findMultiplier(String source, boolean isStatic) {
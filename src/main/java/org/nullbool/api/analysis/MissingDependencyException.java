@@ -0,0 +1,15 @@
+package org.nullbool.api.analysis;
+
+/**
+ * Thrown when an analyser looks up another analyser whose class hasn't been
+ * found yet, which means that the other analyser is missing from its
+ * {@link SupportedHooks#depends()}.
+ */
+public class MissingDependencyException extends IllegalStateException {
+
+	private static final long serialVersionUID = 4622180367711236734L;
+
+	public MissingDependencyException(String analyser, String dependency) {
+		super(analyser + " looked up " + dependency + " before it was identified, add it to the depends of " + analyser);
+	}
+}
@@ -9,4 +9,16 @@ public @interface SupportedHooks {
 	public String[] fields();
 
 	public String[] methods();
+
+	/**
+	 * The names of the analysers whose classes have to be found before this
+	 * analyser can match its own class.
+	 */
+	public String[] depends() default {};
+
+	/**
+	 * The names of the analysers whose field and method hooks are read or
+	 * added to by this analyser's field, method and multi analysers.
+	 */
+	public String[] uses() default {};
 }
\ No newline at end of file
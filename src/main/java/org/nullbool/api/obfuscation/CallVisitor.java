@@ -1,8 +1,15 @@
 package org.nullbool.api.obfuscation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.nullbool.api.Context;
 import org.nullbool.api.util.ClassStructure;
@@ -12,9 +19,37 @@ import org.objectweb.custom_asm.tree.MethodInsnNode;
 import org.objectweb.custom_asm.tree.MethodNode;
 import org.topdank.byteengineer.commons.data.JarContents;
 
+/**
+ * Removes the methods that can't be reached from the entry points (the
+ * methods with long names, which may be called by the JDK, and the methods
+ * that override a method of a class in the jar). <br>
+ *
+ * Every method of the jar is given an id and the methods that can be reached
+ * are found with a worklist over a BitSet, one level of calls at a time. The
+ * calls of the methods in a level are looked up on the pool if there is one.
+ * A call is resolved to the method of its owner or, failing that, of the
+ * first of the owner's supers that declares it, through an index of the
+ * methods that each class has or inherits.
+ */
 public class CallVisitor extends Visitor {
 
-	private int used = 0;
+	private static final int[] EMPTY = new int[0];
+
+	private final ForkJoinPool pool;
+	private MethodNode[] methods;
+	private Map<String, Map<String, Integer>> overrides;
+
+	/**
+	 * @param pool The pool to look up the calls on, or null to do it on the
+	 *            calling thread.
+	 */
+	public CallVisitor(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public CallVisitor() {
+		this(null);
+	}
 
 	@Override
 	public void visit(JarContents<? extends ClassNode> contents) {
@@ -27,6 +62,10 @@ public class CallVisitor extends Visitor {
 			System.err.println("Dummy method remover");
 			System.out.printf("   %d  total methods.%n", total);
 		}
+
+		Map<MethodNode, Integer> ids = number(classesMap, total);
+		overrides = index(classesMap, ids);
+
 		List<MethodNode> entries = new ArrayList<>();
 		for (ClassStructure cs : classesMap.values()) {
 			entries.addAll(cs.getMethods(m -> m.name.length() > 2)); // need to do this to check methods inherited from jdk
@@ -35,39 +74,156 @@ public class CallVisitor extends Visitor {
 //		if(Context.current().getFlags().getOrDefault("basicout", true))
 			System.out.printf("   %d prospect methods.%n", entries.size());
 
-		entries.forEach(e -> search(classesMap, e));
-		classesMap.values().forEach(cs -> cs.getMethods(mn -> !cs.callGraph.containsVertex(mn)).forEach(cs.methods::remove));
+		BitSet reached = new BitSet(total);
+		int[] frontier = new int[entries.size()];
+		int size = 0;
+		for (MethodNode m : entries) {
+			int id = ids.get(m);
+			if (!reached.get(id)) {
+				reached.set(id);
+				frontier[size++] = id;
+			}
+		}
+		frontier = Arrays.copyOf(frontier, size);
+		while (frontier.length > 0)
+			frontier = expand(frontier, reached);
+		int used = reached.cardinality();
+
+		/* The methods are numbered in the same order, so the ids follow on
+		 * from each other. */
+		int id = 0;
+		for (ClassStructure cs : classesMap.values()) {
+			Iterator<MethodNode> it = cs.methods.iterator();
+			while (it.hasNext()) {
+				it.next();
+				if (!reached.get(id++))
+					it.remove();
+			}
+		}
+		Context.current().getClassTree().invalidateMembers();
+		methods = null;
+		overrides = null;
 
 //		if(Context.current().getFlags().getOrDefault("basicout", true))
 			System.out.printf("   Found %d/%d used methods (removed %d dummy methods).%n", used, total, total - used);
 	}
 
-	private void search(Map<String, ClassStructure> tree, MethodNode vertex) {
-		if (tree.get(vertex.owner).callGraph.containsVertex(vertex))
-			return;
-		tree.get(vertex.owner).callGraph.addVertex(vertex);
-		used++;
-		aParnyLoop: for (AbstractInsnNode ain : vertex.instructions.toArray()) {
-			if (ain instanceof MethodInsnNode) {
-				MethodInsnNode min = (MethodInsnNode) ain;
-				if (tree.containsKey(min.owner)) {
-					ClassStructure cs = tree.get(min.owner);
-					MethodNode edge = cs.getMethod(min.name, min.desc);
-					if (edge != null) {
-						tree.get(vertex.owner).callGraph.addEdge(vertex, edge); // method is called, graph it
-						search(tree, edge); // search outgoing calls from that method
+	private Map<MethodNode, Integer> number(Map<String, ClassStructure> classes, int total) {
+		methods = new MethodNode[total];
+		Map<MethodNode, Integer> ids = new IdentityHashMap<MethodNode, Integer>(total);
+		int id = 0;
+		for (ClassStructure cs : classes.values()) {
+			for (MethodNode m : cs.methods) {
+				methods[id] = m;
+				ids.put(m, id++);
+			}
+		}
+		return ids;
+	}
+
+	/* For each class, the method that a call to a name and descriptor on it
+	 * ends up at: its own or the first of its supers'. A super that isn't in
+	 * the jar ends the search, as its methods can't be removed. */
+	private static Map<String, Map<String, Integer>> index(Map<String, ClassStructure> classes, Map<MethodNode, Integer> ids) {
+		Map<String, Map<String, Integer>> overrides = new HashMap<String, Map<String, Integer>>();
+		for (ClassStructure cs : classes.values()) {
+			Map<String, Integer> resolved = new HashMap<String, Integer>();
+			Map<String, Boolean> outside = new HashMap<String, Boolean>();
+			for (MethodNode m : cs.methods) {
+				resolved.putIfAbsent(m.name + m.desc, ids.get(m));
+			}
+			for (ClassNode sup : cs.getSupers()) {
+				Integer sid = null;
+				for (MethodNode m : sup.methods) {
+					String key = m.name + m.desc;
+					if (resolved.containsKey(key) || outside.containsKey(key))
 						continue;
-					}
-					for (ClassStructure supertype : cs.supers) { // do the same for all supertypes and superinterfaces
-						MethodNode superedge = supertype.getMethod(min.name, min.desc);
-						if (superedge != null) {
-							tree.get(vertex.owner).callGraph.addEdge(vertex, superedge);
-							search(tree, superedge);
-							continue aParnyLoop;
-						}
-					}
+					sid = ids.get(m);
+					if (sid != null)
+						resolved.put(key, sid);
+					else
+						outside.put(key, Boolean.TRUE);
 				}
 			}
+			overrides.put(cs.name, resolved);
+		}
+		return overrides;
+	}
+
+	/* Finds the calls of the frontier and gives back the methods that they
+	 * reach for the first time. */
+	private int[] expand(int[] frontier, BitSet reached) {
+		int[][] calls = new int[frontier.length][];
+		Expand task = new Expand(frontier, calls, 0, frontier.length);
+		if (pool != null)
+			pool.invoke(task);
+		else
+			task.calls();
+
+		int[] next = new int[16];
+		int size = 0;
+		for (int[] targets : calls) {
+			for (int t : targets) {
+				if (!reached.get(t)) {
+					reached.set(t);
+					if (size == next.length)
+						next = Arrays.copyOf(next, size * 2);
+					next[size++] = t;
+				}
+			}
+		}
+		return Arrays.copyOf(next, size);
+	}
+
+	private int[] calls(MethodNode m) {
+		int[] targets = EMPTY;
+		int size = 0;
+		for (AbstractInsnNode ain : m.instructions.snapshot()) {
+			if (ain instanceof MethodInsnNode) {
+				MethodInsnNode min = (MethodInsnNode) ain;
+				Map<String, Integer> resolved = overrides.get(min.owner);
+				if (resolved == null)
+					continue;
+				Integer t = resolved.get(min.name + min.desc);
+				if (t == null)
+					continue;
+				if (size == targets.length)
+					targets = Arrays.copyOf(targets, Math.max(4, size * 2));
+				targets[size++] = t;
+			}
+		}
+		return size == targets.length ? targets : Arrays.copyOf(targets, size);
+	}
+
+	private class Expand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 32;
+
+		private final int[] frontier;
+		private final int[][] calls;
+		private final int start, end;
+
+		Expand(int[] frontier, int[][] calls, int start, int end) {
+			this.frontier = frontier;
+			this.calls = calls;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= THRESHOLD) {
+				calls();
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new Expand(frontier, calls, start, mid), new Expand(frontier, calls, mid, end));
+			}
+		}
+
+		void calls() {
+			for (int i = start; i < end; i++) {
+				calls[i] = CallVisitor.this.calls(methods[frontier[i]]);
+			}
 		}
 	}
-}
\ No newline at end of file
+}
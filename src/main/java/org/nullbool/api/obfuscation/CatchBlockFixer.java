@@ -14,9 +14,8 @@ import org.objectweb.custom_asm.tree.TryCatchBlockNode;
 
 public class CatchBlockFixer implements Opcodes {
  
-    private static int catchblockkills = 0;
- 
     public static void rek(Collection<ClassNode> classes) {
+        int catchblockkills = 0;
         for (ClassNode cn : classes) {
             for (MethodNode mn : cn.methods) {
                 List<TryCatchBlockNode> remove = mn.tryCatchBlocks.stream().filter(tcb ->
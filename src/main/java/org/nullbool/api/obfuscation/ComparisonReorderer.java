@@ -28,7 +28,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 31 May 2015
  */
-public class ComparisonReorderer extends NodeVisitor {
+public class ComparisonReorderer extends NodeVisitor implements ForkableVisitor<ComparisonReorderer>, ReadOnlyVisitor {
 
 	private final Set<OperandSwap> swaps = new HashSet<OperandSwap>();
 
@@ -78,6 +78,16 @@ public class ComparisonReorderer extends NodeVisitor {
 		}*/
 	}
 
+	@Override
+	public ComparisonReorderer fork() {
+		return new ComparisonReorderer();
+	}
+
+	@Override
+	public void join(ComparisonReorderer fork) {
+		swaps.addAll(fork.swaps);
+	}
+
 	public void output() {
 		int n = 0;
 		int c = 0;
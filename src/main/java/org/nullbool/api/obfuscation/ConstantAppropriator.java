@@ -7,7 +7,7 @@ import org.objectweb.custom_asm.commons.cfg.tree.node.ArithmeticNode;
  * @author Bibl (don't ban me pls)
  * @created 12 Sep 2015 23:35:27
  */
-public class ConstantAppropriator extends NodeVisitor {
+public class ConstantAppropriator extends NodeVisitor implements ForkableVisitor<ConstantAppropriator>, ReadOnlyVisitor {
 
 	@Override
 	public void visitOperation(ArithmeticNode an) {
@@ -15,4 +15,13 @@ public class ConstantAppropriator extends NodeVisitor {
 			
 		}
 	}
+
+	@Override
+	public ConstantAppropriator fork() {
+		return new ConstantAppropriator();
+	}
+
+	@Override
+	public void join(ConstantAppropriator fork) {
+	}
 }
\ No newline at end of file
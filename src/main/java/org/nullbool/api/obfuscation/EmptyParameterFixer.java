@@ -110,7 +110,7 @@ public class EmptyParameterFixer extends Visitor {
 		}
 
 		Collection<ClassNode> classes = (Collection<ClassNode>) contents.getClassContents();
-		ClassTree tree = new ClassTree(classes);
+		ClassTree tree = Context.current().getClassTree();
 		InheritedMethodMap mmp = new InheritedMethodMap(tree, true);
 		MethodCache cache = new MethodCache(classes);
 
@@ -182,6 +182,7 @@ public class EmptyParameterFixer extends Visitor {
 
 		//System.out.printf("start=%d, end=%d.%n", startSize, map.size());
 		fix(tree, mmp, cache, classes, map);
+		tree.invalidateMembers();
 		
 		if(print) {
 			System.out.printf("   Skipped methods: %s.%n", skipped);
@@ -21,7 +21,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 31 May 2015
  */
-public class EmptyPopRemover extends NodeVisitor {
+public class EmptyPopRemover extends NodeVisitor implements ForkableVisitor<EmptyPopRemover>, ReadOnlyVisitor {
 
 	private final NullPermeableHashMap<MethodNode, List<AbstractInsnNode>> toRemove = new NullPermeableHashMap<MethodNode, List<AbstractInsnNode>>(new ValueCreator<List<AbstractInsnNode>>() {
 		@Override
@@ -51,6 +51,19 @@ public class EmptyPopRemover extends NodeVisitor {
 		}
 	}
 
+	@Override
+	public EmptyPopRemover fork() {
+		return new EmptyPopRemover();
+	}
+
+	@Override
+	public void join(EmptyPopRemover fork) {
+		toRemove.putAll(fork.toRemove);
+		removed += fork.removed;
+		unremovable += fork.unremovable;
+		chosenUnremovable += fork.chosenUnremovable;
+	}
+
 	public void output() {
 		int i = 0;
 		for(Entry<MethodNode, List<AbstractInsnNode>> e : toRemove.entrySet()) {
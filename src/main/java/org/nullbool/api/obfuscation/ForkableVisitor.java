@@ -0,0 +1,30 @@
+package org.nullbool.api.obfuscation;
+
+import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
+
+/**
+ * A {@link NodeVisitor} that can be split into independent copies so that
+ * methods can be visited on several threads at once. <br>
+ *
+ * Each copy returned by {@link #fork()} must start with empty state and only
+ * touch the methods that it is given. Once every copy has finished, the
+ * copies are passed back to the original visitor with {@link #join(NodeVisitor)}
+ * in the same order that the methods would have been visited sequentially,
+ * so that collected results (and therefore the output) are the same as a
+ * single threaded run.
+ *
+ * @param <V> The concrete visitor type.
+ */
+public interface ForkableVisitor<V extends NodeVisitor> {
+
+	/**
+	 * @return A new visitor with empty state that performs the same work as this one.
+	 */
+	V fork();
+
+	/**
+	 * Merges the counters and collected results of a forked visitor into this one.
+	 * @param fork A visitor that was previously created with {@link #fork()}.
+	 */
+	void join(V fork);
+}
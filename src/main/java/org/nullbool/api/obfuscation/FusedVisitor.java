@@ -0,0 +1,256 @@
+package org.nullbool.api.obfuscation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
+import org.objectweb.custom_asm.commons.cfg.tree.node.AbstractNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.ArithmeticNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.ConstantNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.ConversionNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.FieldMemberNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.IincNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.JumpNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.MethodMemberNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.NumberNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.TypeNode;
+import org.objectweb.custom_asm.commons.cfg.tree.node.VariableNode;
+
+/**
+ * Passes every callback of a single tree walk to a number of read only
+ * visitors, in the order that they were added, so that several analyses
+ * only need one walk over the code. <br>
+ *
+ * Only {@link ReadOnlyVisitor}s can be added, as none of the visitors may
+ * see changes that another makes during the walk, and they all have to be
+ * {@link ForkableVisitor}s so that the walk can still be run in parallel.
+ */
+public class FusedVisitor extends NodeVisitor implements ForkableVisitor<FusedVisitor>, ReadOnlyVisitor {
+
+	private final List<Pass<?>> passes = new ArrayList<Pass<?>>();
+	private final List<NodeVisitor> visitors = new ArrayList<NodeVisitor>();
+
+	/**
+	 * Adds a visitor to the walk, after the ones that were added before it.
+	 *
+	 * @param visitor The visitor.
+	 * @return This visitor.
+	 */
+	public <V extends NodeVisitor & ForkableVisitor<V> & ReadOnlyVisitor> FusedVisitor add(V visitor) {
+		add(new Pass<V>(visitor, null));
+		return this;
+	}
+
+	private void add(Pass<?> pass) {
+		passes.add(pass);
+		visitors.add(pass.visitor);
+	}
+
+	@Override
+	public FusedVisitor fork() {
+		FusedVisitor fork = new FusedVisitor();
+		for(Pass<?> pass : passes) {
+			fork.add(pass.fork());
+		}
+		return fork;
+	}
+
+	@Override
+	public void join(FusedVisitor fork) {
+		for(int i=0; i < passes.size(); i++) {
+			Pass<?> pass = fork.passes.get(i);
+			if(pass.parent != passes.get(i))
+				throw new IllegalArgumentException("Not a fork of this visitor.");
+			pass.joinParent();
+		}
+	}
+
+	@Override
+	public boolean validate() {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void visitAny(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitAny(n);
+		}
+	}
+
+	@Override
+	public void visit(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visit(n);
+		}
+	}
+
+	@Override
+	public void visitCode() {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitCode();
+		}
+	}
+
+	@Override
+	public void visitEnd() {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitEnd();
+		}
+	}
+
+	@Override
+	public void visitField(FieldMemberNode fmn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitField(fmn);
+		}
+	}
+
+	@Override
+	public void visitFrame(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitFrame(n);
+		}
+	}
+
+	@Override
+	public void visitIinc(IincNode in) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitIinc(in);
+		}
+	}
+
+	@Override
+	public void visitJump(JumpNode jn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitJump(jn);
+		}
+	}
+
+	@Override
+	public void visitLabel(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitLabel(n);
+		}
+	}
+
+	@Override
+	public void visitConversion(ConversionNode cn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitConversion(cn);
+		}
+	}
+
+	@Override
+	public void visitConstant(ConstantNode cn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitConstant(cn);
+		}
+	}
+
+	@Override
+	public void visitNumber(NumberNode nn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitNumber(nn);
+		}
+	}
+
+	@Override
+	public void visitOperation(ArithmeticNode an) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitOperation(an);
+		}
+	}
+
+	@Override
+	public void visitVariable(VariableNode vn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitVariable(vn);
+		}
+	}
+
+	@Override
+	public void visitLine(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitLine(n);
+		}
+	}
+
+	@Override
+	public void visitLookupSwitch(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitLookupSwitch(n);
+		}
+	}
+
+	@Override
+	public void visitMethod(MethodMemberNode mmn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitMethod(mmn);
+		}
+	}
+
+	@Override
+	public void visitMultiANewArray(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitMultiANewArray(n);
+		}
+	}
+
+	@Override
+	public void visitTableSwitch(AbstractNode n) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitTableSwitch(n);
+		}
+	}
+
+	@Override
+	public void visitType(TypeNode tn) {
+		for(NodeVisitor nv : visitors) {
+			if(nv.validate())
+				nv.visitType(tn);
+		}
+	}
+
+	/* Keeps the type of a visitor so that its forks can be joined back
+	 * into it without any casts. */
+	private static class Pass<V extends NodeVisitor & ForkableVisitor<V>> {
+		private final V visitor;
+		private final Pass<V> parent;
+
+		Pass(V visitor, Pass<V> parent) {
+			this.visitor = visitor;
+			this.parent = parent;
+		}
+
+		Pass<V> fork() {
+			return new Pass<V>(visitor.fork(), this);
+		}
+
+		void joinParent() {
+			parent.visitor.join(visitor);
+		}
+	}
+}
@@ -98,7 +98,7 @@ import org.objectweb.custom_asm.tree.TypeInsnNode;
  * @author Bibl (don't ban me pls)
  * @created 30 May 2015
  */
-public class OpaquePredicateRemover extends NodeVisitor {
+public class OpaquePredicateRemover extends NodeVisitor implements ForkableVisitor<OpaquePredicateRemover> {
 
 	private final Map<MethodNode, Opaque> foundPredicates = new HashMap<MethodNode, Opaque>();
 	private final Set<ComparisonPair> pairs = new HashSet<ComparisonPair>();
@@ -263,6 +263,20 @@ public class OpaquePredicateRemover extends NodeVisitor {
 		targetVar = 0;
 	}
 	
+	@Override
+	public OpaquePredicateRemover fork() {
+		return new OpaquePredicateRemover();
+	}
+
+	@Override
+	public void join(OpaquePredicateRemover fork) {
+		foundPredicates.putAll(fork.foundPredicates);
+		count += fork.count;
+		mcount += fork.mcount;
+		mdiscard += fork.mdiscard;
+		typediscard += fork.typediscard;
+	}
+
 	public Opaque find(MethodNode m) {
 		return foundPredicates.get(m);
 	}
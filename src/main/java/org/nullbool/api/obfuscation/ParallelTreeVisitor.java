@@ -0,0 +1,117 @@
+package org.nullbool.api.obfuscation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
+import org.objectweb.custom_asm.commons.cfg.tree.util.TreeBuilder;
+import org.objectweb.custom_asm.commons.cfg.tree.util.TreeCache;
+import org.objectweb.custom_asm.tree.ClassNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * Runs a {@link ForkableVisitor} over every method of a jar on a {@link ForkJoinPool}. <br>
+ *
+ * The methods are split into fixed chunks (in class and method order) and every
+ * chunk is given its own forked visitor and {@link TreeBuilder}. When all of the
+ * chunks have completed, the forks are joined back into the original visitor in
+ * chunk order and the tree building times are added to the shared builder.
+ * Trees are taken from the shared {@link TreeCache}. <br>
+ *
+ * The passes poll their flags through the {@link org.nullbool.api.Context}, so
+ * the pool should be made with {@link org.nullbool.api.Context#workerFactory}.
+ */
+public class ParallelTreeVisitor {
+
+	private static final int CHUNK_SIZE = 64;
+
+	private final ForkJoinPool pool;
+	private final TreeBuilder builder;
+	private final TreeCache cache;
+
+	public ParallelTreeVisitor(ForkJoinPool pool, TreeBuilder builder, TreeCache cache) {
+		this.pool = pool;
+		this.builder = builder;
+		this.cache = cache;
+	}
+
+	public <V extends NodeVisitor & ForkableVisitor<V>> void visit(Collection<? extends ClassNode> classes, V visitor) {
+		visit(classes, visitor, new MethodAction<V>() {
+			@Override
+			public void visit(TreeBuilder builder, MethodNode m, V visitor) {
+				cache.get(m, builder).accept(visitor);
+				if (!(visitor instanceof ReadOnlyVisitor))
+					cache.invalidate(m);
+			}
+		});
+	}
+
+	public <V extends NodeVisitor & ForkableVisitor<V>> void visit(Collection<? extends ClassNode> classes, V visitor, MethodAction<V> action) {
+		List<MethodNode> methods = new ArrayList<MethodNode>();
+		for (ClassNode cn : classes) {
+			for (MethodNode m : cn.methods) {
+				if (m.instructions.size() > 0)
+					methods.add(m);
+			}
+		}
+
+		List<Chunk<V>> chunks = new ArrayList<Chunk<V>>();
+		for (int i = 0; i < methods.size(); i += CHUNK_SIZE) {
+			List<MethodNode> sub = methods.subList(i, Math.min(i + CHUNK_SIZE, methods.size()));
+			chunks.add(new Chunk<V>(sub, visitor.fork(), action));
+		}
+
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(chunks);
+			}
+		});
+
+		for (Chunk<V> c : chunks) {
+			visitor.join(c.visitor);
+			builder.create += c.builder.create;
+			builder.iterate += c.builder.iterate;
+		}
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * The work that is done on a single method, defaults to getting the
+	 * tree of the method and passing the visitor to it.
+	 */
+	public static interface MethodAction<V extends NodeVisitor> {
+		void visit(TreeBuilder builder, MethodNode m, V visitor);
+	}
+
+	private static class Chunk<V extends NodeVisitor> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<MethodNode> methods;
+		private final V visitor;
+		private final MethodAction<V> action;
+		private final TreeBuilder builder;
+
+		public Chunk(List<MethodNode> methods, V visitor, MethodAction<V> action) {
+			this.methods = methods;
+			this.visitor = visitor;
+			this.action = action;
+			builder = new TreeBuilder();
+		}
+
+		@Override
+		protected void compute() {
+			for (MethodNode m : methods) {
+				action.visit(builder, m, visitor);
+			}
+		}
+	}
+}
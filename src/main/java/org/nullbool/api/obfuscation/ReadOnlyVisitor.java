@@ -0,0 +1,16 @@
+package org.nullbool.api.obfuscation;
+
+/**
+ * Marks a {@link org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor} that
+ * doesn't change any instructions (or tree nodes) in place while it is visiting
+ * a method and that doesn't need to be told when a method starts or ends, so
+ * that a plain walk over the tree of each method is enough to drive it. <br>
+ * 
+ * Visitors that collect changes and make them later through the methods
+ * {@link org.objectweb.custom_asm.tree.InsnList} are still read only, as the
+ * modification count of the list tells the tree cache that the method has
+ * changed. Trees that are visited by any other visitor are thrown away after
+ * the visit.
+ */
+public interface ReadOnlyVisitor {
+}
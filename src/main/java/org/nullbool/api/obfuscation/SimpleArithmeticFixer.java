@@ -19,7 +19,7 @@ import org.objectweb.custom_asm.tree.VarInsnNode;
  * @author Bibl (don't ban me pls)
  * @created 29 May 2015
  */
-public class SimpleArithmeticFixer extends NodeVisitor {
+public class SimpleArithmeticFixer extends NodeVisitor implements ForkableVisitor<SimpleArithmeticFixer> {
 
 	private final Set<InstructionSwap> inserts = new HashSet<InstructionSwap>();
 
@@ -329,6 +329,31 @@ public class SimpleArithmeticFixer extends NodeVisitor {
 		return num.intValue() < 0 || num.longValue() < 0 || num.doubleValue() < 0 || num.floatValue() < 0;
 	}
 
+	@Override
+	public SimpleArithmeticFixer fork() {
+		return new SimpleArithmeticFixer();
+	}
+
+	@Override
+	public void join(SimpleArithmeticFixer fork) {
+		inserts.addAll(fork.inserts);
+		generalWtfs += fork.generalWtfs;
+		addMins += fork.addMins;
+		subMins += fork.subMins;
+		complexAddSwitch += fork.complexAddSwitch;
+		addSwitch += fork.addSwitch;
+		simpleAddSwap += fork.simpleAddSwap;
+		correctAdds += fork.correctAdds;
+		complexSubSwitch += fork.complexSubSwitch;
+		unswitchableSubs += fork.unswitchableSubs;
+		correctSubs += fork.correctSubs;
+		awtfs += fork.awtfs;
+		multiplyByOne += fork.multiplyByOne;
+		swappedMultis += fork.swappedMultis;
+		correctMultis += fork.correctMultis;
+		multiWtfs += fork.multiWtfs;
+	}
+
 	public void output() {
 		if(Context.current().getFlags().getOrDefault("basicout", true))
 			System.out.println();
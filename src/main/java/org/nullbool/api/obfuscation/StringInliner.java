@@ -10,6 +10,7 @@ import org.nullbool.api.Context;
 import org.nullbool.api.obfuscation.refactor.ClassTree;
 import org.nullbool.api.obfuscation.refactor.DataCache;
 import org.nullbool.api.obfuscation.refactor.FieldCache;
+import org.nullbool.api.util.ClassStructure;
 import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
 import org.objectweb.custom_asm.commons.cfg.tree.node.ConstantNode;
 import org.objectweb.custom_asm.commons.cfg.tree.node.FieldMemberNode;
@@ -49,7 +50,7 @@ public class StringInliner extends Visitor {
 
 		for (ClassNode cn : classes) {
 			for (MethodNode m : cn.methods) {
-				for (AbstractInsnNode ain : m.instructions.toArray()) {
+				for (AbstractInsnNode ain : m.instructions.snapshot()) {
 					if (ain.getOpcode() == GETSTATIC) {
 						FieldInsnNode fin = (FieldInsnNode) ain;
 						FieldNode f = cache.get(fin.owner, fin.name, fin.desc);
@@ -130,19 +131,18 @@ public class StringInliner extends Visitor {
 	}
 
 	public static FieldNode lookup(String owner, String name, String desc) {
-		String halfKey = name + " " + desc;
 		ClassTree tree = Context.current().getClassTree();
 		ClassNode cn = tree.getClass(owner);
 
 		if(cn == null)
 			return null;
 
-		FieldNode f = find(cn, halfKey);
+		FieldNode f = find(cn, name, desc);
 		if(f != null)
 			return f;
 
 		for(ClassNode sup : tree.getSupers(cn)) {
-			f = find(sup, halfKey);
+			f = find(sup, name, desc);
 			if(f != null)
 				return f;
 		}
@@ -150,9 +150,11 @@ public class StringInliner extends Visitor {
 		return null;
 	}
 
-	private static FieldNode find(ClassNode cn, String halfKey) {
+	private static FieldNode find(ClassNode cn, String name, String desc) {
+		if(cn instanceof ClassStructure)
+			return ((ClassStructure) cn).getDeclaredField(name, desc);
 		for(FieldNode f : cn.fields) {
-			if(f.halfKey().equals(halfKey))
+			if(f.name.equals(name) && f.desc.equals(desc))
 				return f;
 		}
 
@@ -1,13 +1,13 @@
 package org.nullbool.api.obfuscation;
 
 import java.lang.reflect.Modifier;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
 import org.nullbool.api.Context;
 import org.nullbool.api.obfuscation.refactor.ClassTree;
+import org.nullbool.api.util.ClassStructure;
 import org.objectweb.custom_asm.tree.AbstractInsnNode;
 import org.objectweb.custom_asm.tree.ClassNode;
 import org.objectweb.custom_asm.tree.FieldInsnNode;
@@ -22,8 +22,7 @@ public class UnusedFieldRemover extends Visitor {
 		if(Context.current().getFlags().getOrDefault("basicout", true))
 			System.err.println("Running Unused Field Remover.");
 		
-		@SuppressWarnings("unchecked")
-		ClassTree tree = new ClassTree((Collection<ClassNode>) contents.getClassContents());
+		ClassTree tree = Context.current().getClassTree();
 		Set<FieldNode> traced = new HashSet<FieldNode>();
 		int untraceable = 0;
 		
@@ -32,10 +31,10 @@ public class UnusedFieldRemover extends Visitor {
 		
 		for(ClassNode cn : tree.getClasses().values()) {
 			for(MethodNode m : cn.methods) {
-				for(AbstractInsnNode ain : m.instructions.toArray()) {
+				for(AbstractInsnNode ain : m.instructions.snapshot()) {
 					if(ain.getOpcode() == GETSTATIC || ain.getOpcode() == PUTSTATIC) {
 						FieldInsnNode fin = (FieldInsnNode) ain;
-						FieldNode ref = findReference(tree, fin.owner, fin.halfKey());
+						FieldNode ref = findReference(tree, fin.owner, fin.name, fin.desc);
 						if(ref == null) {
 							// if(debug)
 							// System.err.printf("%s is null.%n", fin.key());
@@ -77,18 +76,18 @@ public class UnusedFieldRemover extends Visitor {
 			System.out.printf("   Removed %d unused fields.%n", removed);
 	}
 	
-	private static FieldNode findReference(ClassTree tree, String owner, String halfKey) {
+	private static FieldNode findReference(ClassTree tree, String owner, String name, String desc) {
 		ClassNode startNode = tree.getClass(owner);
 		if(startNode == null)
 			return null;
 		
-		FieldNode field = findReference(startNode, halfKey);
+		FieldNode field = findReference(startNode, name, desc);
 		if(field != null) 
 			return field;
 
 		Set<ClassNode> supers = tree.getSupers(startNode);
 		for(ClassNode cn : supers) {
-			field = findReference(cn, halfKey);
+			field = findReference(cn, name, desc);
 			if(field != null)
 				return field;
 		}
@@ -97,9 +96,11 @@ public class UnusedFieldRemover extends Visitor {
 		return null;
 	}
 	
-	private static FieldNode findReference(ClassNode cn, String halfKey) {
+	private static FieldNode findReference(ClassNode cn, String name, String desc) {
+		if(cn instanceof ClassStructure)
+			return ((ClassStructure) cn).getDeclaredField(name, desc);
 		for(FieldNode f : cn.fields) {
-			if(f.halfKey().equals(halfKey))
+			if(f.name.equals(name) && f.desc.equals(desc))
 				return f;
 		}
 		return null;
@@ -427,6 +427,16 @@ private static int graphCount = 0;
 		exit = dummyExit;
 	}
 	
+	/**
+	 * Sets the entry and exit blocks of a graph whose blocks were built some
+	 * other way than by {@link #create(MethodNode)} (see {@link CompactGraphAdapter}).
+	 */
+	protected void setBounds(FlowBlock entry, FlowBlock exit, boolean loop) {
+		this.entry = entry;
+		this.exit = exit;
+		this.loop = loop;
+	}
+	
 	private void removeGotos() throws ControlFlowException {		
 		for (FlowBlock block : blocks) {
 			AbstractInsnNode last = block.last();
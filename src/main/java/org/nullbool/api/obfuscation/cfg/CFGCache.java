@@ -1,53 +1,216 @@
 package org.nullbool.api.obfuscation.cfg;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.nullbool.api.util.map.ValueCreator;
+import org.objectweb.custom_asm.tree.ClassNode;
 import org.objectweb.custom_asm.tree.MethodNode;
 
 /**
+ * Builds the control flow graph of a method the first time that it's asked
+ * for and keeps it for the next callers. Graphs can be built by several
+ * threads at once, either on demand or all up front with
+ * {@link #warmUp(Collection, ForkJoinPool)}. <br>
+ *
+ * A cache can be given a maximum weight (the number of instructions in the
+ * methods of the graphs that it holds). Once the weight goes over it, the
+ * graphs that were used the longest time ago are dropped until the cache is
+ * back to three quarters of the maximum. A dropped graph is simply built
+ * again when it's next asked for.
+ *
  * @author Bibl (don't ban me pls)
  * @created 28 May 2015
  */
 public class CFGCache {
 
-	private final Map<MethodNode, IControlFlowGraph> cache;
+	private final Map<MethodNode, Entry> cache;
 	private final ValueCreator<IControlFlowGraph> graphCreator;
-	
+	private final long maxWeight;
+	private final AtomicLong weight = new AtomicLong();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
 	public CFGCache(ValueCreator<IControlFlowGraph> graphCreator) {
-		cache = new HashMap<MethodNode, IControlFlowGraph>();
+		this(graphCreator, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param graphCreator Creates the empty graphs.
+	 * @param maxWeight The most instructions that the methods of the cached graphs can have in total.
+	 */
+	public CFGCache(ValueCreator<IControlFlowGraph> graphCreator, long maxWeight) {
+		cache = new ConcurrentHashMap<MethodNode, Entry>();
 		this.graphCreator = graphCreator;
+		this.maxWeight = maxWeight;
 	}
-	
+
 	public boolean contains(MethodNode m) {
 		return cache.containsKey(m);
 	}
-	
+
 	public void add(MethodNode m, IControlFlowGraph graph) {
-		cache.put(m, graph);
+		put(m, new Entry(graph, m.instructions.size()));
 	}
-	
+
 	public IControlFlowGraph get(MethodNode m) throws ControlFlowException {
-		if(cache.containsKey(m)) {
-			return cache.get(m);
+		Entry e = cache.get(m);
+		if(e != null) {
+			hits.incrementAndGet();
+			e.touch();
+			return e.graph;
+		}
+
+		misses.incrementAndGet();
+		IControlFlowGraph graph = graphCreator.create();
+		graph.create(m);
+		e = new Entry(graph, m.instructions.size());
+		/* If another thread built the graph at the same time, everyone uses the first one. */
+		Entry prev = cache.putIfAbsent(m, e);
+		if(prev != null) {
+			prev.touch();
+			return prev.graph;
+		}
+		if(weight.addAndGet(e.weight) > maxWeight)
+			evict();
+		return graph;
+	}
+
+	private void put(MethodNode m, Entry e) {
+		Entry prev = cache.put(m, e);
+		if(prev != null)
+			weight.addAndGet(-prev.weight);
+		if(weight.addAndGet(e.weight) > maxWeight)
+			evict();
+	}
+
+	private synchronized void evict() {
+		if(weight.get() <= maxWeight)
+			return;
+
+		List<Map.Entry<MethodNode, Entry>> entries = new ArrayList<Map.Entry<MethodNode, Entry>>(cache.entrySet());
+		entries.sort((e1, e2) -> Long.compare(e1.getValue().lastUse, e2.getValue().lastUse));
+		long target = maxWeight / 4 * 3;
+		for(Map.Entry<MethodNode, Entry> e : entries) {
+			if(weight.get() <= target)
+				break;
+			if(cache.remove(e.getKey(), e.getValue())) {
+				weight.addAndGet(-e.getValue().weight);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Builds the graphs of every method (that has code) in the classes.
+	 *
+	 * @param classes The classes.
+	 * @param pool The pool to build the graphs in or null to build them on the current thread.
+	 */
+	public void warmUp(Collection<ClassNode> classes, ForkJoinPool pool) {
+		List<MethodNode> methods = new ArrayList<MethodNode>();
+		for(ClassNode cn : classes) {
+			for(MethodNode m : cn.methods) {
+				if(m.instructions.size() > 0)
+					methods.add(m);
+			}
+		}
+
+		if(pool == null) {
+			for(MethodNode m : methods) {
+				build(m);
+			}
 		} else {
-			IControlFlowGraph graph = graphCreator.create();
-			graph.create(m);
-			cache.put(m, graph);
-			return graph;
+			pool.invoke(new WarmUp(methods, 0, methods.size()));
 		}
 	}
-	
+
+	private void build(MethodNode m) {
+		try {
+			get(m);
+		} catch (ControlFlowException e) {
+			e.printStackTrace();
+		}
+	}
+
 	public int size() {
 		return cache.size();
 	}
-	
+
 	public void clear() {
 		cache.clear();
+		weight.set(0);
 	}
-	
+
 	public void remove(MethodNode m) {
-		cache.remove(m);
+		Entry e = cache.remove(m);
+		if(e != null)
+			weight.addAndGet(-e.weight);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public void output() {
+		System.err.printf("CFG cache: %d graphs, %d hits, %d misses, %d evictions.%n", cache.size(), hits.get(), misses.get(), evictions.get());
+	}
+
+	private class Entry {
+		private final IControlFlowGraph graph;
+		private final int weight;
+		private volatile long lastUse;
+
+		Entry(IControlFlowGraph graph, int weight) {
+			this.graph = graph;
+			this.weight = weight;
+			touch();
+		}
+
+		void touch() {
+			lastUse = clock.incrementAndGet();
+		}
+	}
+
+	private class WarmUp extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 64;
+
+		private final List<MethodNode> methods;
+		private final int start, end;
+
+		WarmUp(List<MethodNode> methods, int start, int end) {
+			this.methods = methods;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(end - start <= THRESHOLD) {
+				for(int i = start; i < end; i++) {
+					build(methods.get(i));
+				}
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new WarmUp(methods, start, mid), new WarmUp(methods, mid, end));
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+package org.nullbool.api.obfuscation.cfg;
+
+import static org.nullbool.api.util.InstructionUtil.isExit;
+import static org.nullbool.api.util.InstructionUtil.isSwitch;
+import static org.nullbool.api.util.InstructionUtil.isUnconditional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.objectweb.custom_asm.Opcodes;
+import org.objectweb.custom_asm.tree.AbstractInsnNode;
+import org.objectweb.custom_asm.tree.JumpInsnNode;
+import org.objectweb.custom_asm.tree.LabelNode;
+import org.objectweb.custom_asm.tree.LookupSwitchInsnNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+import org.objectweb.custom_asm.tree.TableSwitchInsnNode;
+import org.objectweb.custom_asm.tree.TryCatchBlockNode;
+
+/**
+ * The same graph as a {@link SaneControlFlowGraph} (the blocks are split in
+ * the same places and linked in the same way) kept in int arrays instead of
+ * FlowBlocks. <br>
+ *
+ * A block is an id from 0 (the entry) to {@link #size()} - 1 and covers a
+ * range of the method's instruction array. The id {@link #size()} is the
+ * dummy exit block that every block without a successor leads to. The
+ * successors, predecessors and their exception counterparts are held in
+ * compressed rows: the edges of block b are at [offsets[b], offsets[b + 1])
+ * in one array of ids. <br>
+ *
+ * {@link CompactGraphAdapter} turns one of these into an
+ * {@link IControlFlowGraph} for the code that works with FlowBlocks.
+ */
+public class CompactControlFlowGraph implements Opcodes {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final MethodNode method;
+	private final AbstractInsnNode[] insns;
+	/* Block b covers [starts[b], starts[b + 1]). */
+	private final int[] starts;
+	private final int size;
+	private final int[] targets;
+	private final int[] succOffsets, succs;
+	private final int[] predOffsets, preds;
+	private final int[] excSuccOffsets, excSuccs;
+	private final int[] excPredOffsets, excPreds;
+	private final int[] rangeFrom, rangeTo, rangeHandler;
+	private final List<List<String>> rangeTypes;
+	private final boolean loop;
+
+	public CompactControlFlowGraph(MethodNode method) throws ControlFlowException {
+		this.method = method;
+		insns = method.instructions.toArray();
+		if(insns.length == 0)
+			throw new ControlFlowException(String.format("%s has no instructions.", method.key()));
+
+		int[] starts = new int[insns.length + 1];
+		int n = 1;
+		for(int i=0; i < insns.length - 1; i++) {
+			if(AbstractControlFlowGraph.isBlockSplit(insns[i]))
+				starts[n++] = i + 1;
+		}
+		starts[n] = insns.length;
+		this.starts = Arrays.copyOf(starts, n + 1);
+		size = n;
+
+		EdgeLists succs = new EdgeLists(n + 1);
+		targets = new int[n];
+		for(int b=0; b < n; b++) {
+			AbstractInsnNode last = insns[end(b) - 1];
+			int op = last.getOpcode();
+
+			targets[b] = -1;
+			if(last instanceof JumpInsnNode) {
+				targets[b] = blockOf(((JumpInsnNode) last).label);
+				succs.add(b, targets[b]);
+			}
+
+			if(!isUnconditional(op) && !isExit(op) && !isSwitch(op)) {
+				if(b + 1 < n)
+					succs.add(b, b + 1);
+			} else if(op == TABLESWITCH) {
+				TableSwitchInsnNode tsin = (TableSwitchInsnNode) last;
+				succs.add(b, blockOf(tsin.dflt));
+				for(LabelNode l : tsin.labels) {
+					succs.add(b, blockOf(l));
+				}
+			} else if(op == LOOKUPSWITCH) {
+				LookupSwitchInsnNode lsin = (LookupSwitchInsnNode) last;
+				succs.add(b, blockOf(lsin.dflt));
+				for(LabelNode l : lsin.labels) {
+					succs.add(b, blockOf(l));
+				}
+			}
+		}
+
+		/* Ranges with the same start, end and handler are merged into one. */
+		EdgeLists excSuccs = new EdgeLists(n + 1);
+		EdgeLists excPreds = new EdgeLists(n + 1);
+		int t = method.tryCatchBlocks.size();
+		int[] rangeFrom = new int[t], rangeTo = new int[t], rangeHandler = new int[t];
+		List<List<String>> rangeTypes = new ArrayList<List<String>>();
+		int ranges = 0;
+		for(TryCatchBlockNode tcbn : method.tryCatchBlocks) {
+			int from = blockOf(tcbn.start), to = blockOf(tcbn.end), handler = blockOf(tcbn.handler);
+			int r = 0;
+			while(r < ranges && (rangeFrom[r] != from || rangeTo[r] != to || rangeHandler[r] != handler))
+				r++;
+
+			if(r < ranges) {
+				rangeTypes.get(r).add(tcbn.type);
+				continue;
+			}
+
+			rangeFrom[ranges] = from;
+			rangeTo[ranges] = to;
+			rangeHandler[ranges] = handler;
+			List<String> types = new ArrayList<String>();
+			types.add(tcbn.type);
+			rangeTypes.add(types);
+			ranges++;
+
+			/* A range always covers at least its first block. */
+			int b = from;
+			do {
+				excPreds.add(handler, b);
+				excSuccs.add(b, handler);
+				b++;
+			} while(b < to);
+		}
+		this.rangeFrom = Arrays.copyOf(rangeFrom, ranges);
+		this.rangeTo = Arrays.copyOf(rangeTo, ranges);
+		this.rangeHandler = Arrays.copyOf(rangeHandler, ranges);
+		this.rangeTypes = rangeTypes;
+
+		for(int b=0; b < n; b++) {
+			if(succs.size(b) == 0)
+				succs.add(b, n);
+		}
+
+		succOffsets = succs.offsets();
+		this.succs = succs.edges();
+		EdgeLists preds = new EdgeLists(n + 1);
+		for(int b=0; b < n; b++) {
+			for(int k=succOffsets[b]; k < succOffsets[b + 1]; k++) {
+				preds.add(this.succs[k], b);
+			}
+		}
+		predOffsets = preds.offsets();
+		this.preds = preds.edges();
+		excSuccOffsets = excSuccs.offsets();
+		this.excSuccs = excSuccs.edges();
+		excPredOffsets = excPreds.offsets();
+		this.excPreds = excPreds.edges();
+
+		loop = cycles();
+	}
+
+	private int blockOf(LabelNode label) throws ControlFlowException {
+		int i = method.instructions.indexOf(label);
+		if(i < 0 || i >= insns.length || insns[i] != label)
+			throw new ControlFlowException(String.format("Couldn't find block for label %s.", label));
+		return blockOf(i);
+	}
+
+	/**
+	 * @param insn The index of an instruction.
+	 * @return The block that contains the instruction.
+	 */
+	public int blockOf(int insn) {
+		int i = Arrays.binarySearch(starts, 0, size, insn);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/* The same (odd) check as AbstractControlFlowGraph.cycles(), which is
+	 * true as soon as a block can be reached twice. */
+	private boolean cycles() {
+		boolean[] visited = new boolean[size + 1];
+		int[] stack = new int[size + 1];
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0) {
+			int v = stack[--top];
+			if(visited[v])
+				continue;
+			visited[v] = true;
+
+			for(int pass=0; pass < 2; pass++) {
+				int[] offsets = pass == 0 ? succOffsets : excSuccOffsets;
+				int[] edges = pass == 0 ? succs : excSuccs;
+				for(int k=offsets[v]; k < offsets[v + 1]; k++) {
+					int b = edges[k];
+					if(visited[b])
+						return true;
+					if(top == stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[top++] = b;
+				}
+			}
+		}
+		return false;
+	}
+
+	public MethodNode method() {
+		return method;
+	}
+
+	/**
+	 * @return The instructions of the method when the graph was built.
+	 */
+	public AbstractInsnNode[] insns() {
+		return insns;
+	}
+
+	/**
+	 * @return The number of blocks, not counting the exit.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int entry() {
+		return 0;
+	}
+
+	public int exit() {
+		return size;
+	}
+
+	/**
+	 * @return The index of the first instruction of the block.
+	 */
+	public int start(int b) {
+		return starts[b];
+	}
+
+	/**
+	 * @return The index after the last instruction of the block.
+	 */
+	public int end(int b) {
+		return starts[b + 1];
+	}
+
+	/**
+	 * @return The block that the block jumps to or -1 if it doesn't end with a jump.
+	 */
+	public int target(int b) {
+		return b < size ? targets[b] : -1;
+	}
+
+	public int successorCount(int b) {
+		return succOffsets[b + 1] - succOffsets[b];
+	}
+
+	public int successor(int b, int k) {
+		return succs[succOffsets[b] + k];
+	}
+
+	public int predecessorCount(int b) {
+		return predOffsets[b + 1] - predOffsets[b];
+	}
+
+	public int predecessor(int b, int k) {
+		return preds[predOffsets[b] + k];
+	}
+
+	public int exceptionSuccessorCount(int b) {
+		return excSuccOffsets[b + 1] - excSuccOffsets[b];
+	}
+
+	public int exceptionSuccessor(int b, int k) {
+		return excSuccs[excSuccOffsets[b] + k];
+	}
+
+	public int exceptionPredecessorCount(int b) {
+		return excPredOffsets[b + 1] - excPredOffsets[b];
+	}
+
+	public int exceptionPredecessor(int b, int k) {
+		return excPreds[excPredOffsets[b] + k];
+	}
+
+	/**
+	 * @return The number of exception ranges (try catch blocks with the same
+	 *         start, end and handler are one range).
+	 */
+	public int rangeCount() {
+		return rangeFrom.length;
+	}
+
+	/**
+	 * @return The first block of the range.
+	 */
+	public int rangeFrom(int r) {
+		return rangeFrom[r];
+	}
+
+	/**
+	 * @return The block after the last block of the range, which may be the
+	 *         first block if the range only covers that block.
+	 */
+	public int rangeTo(int r) {
+		return rangeTo[r];
+	}
+
+	public int rangeHandler(int r) {
+		return rangeHandler[r];
+	}
+
+	public List<String> rangeTypes(int r) {
+		return rangeTypes.get(r);
+	}
+
+	public boolean hasLoop() {
+		return loop;
+	}
+
+	/* Per block lists of ids, without duplicates, which are then packed into
+	 * compressed rows. */
+	static class EdgeLists {
+		private final int[][] lists;
+		private final int[] sizes;
+		private int total;
+
+		EdgeLists(int blocks) {
+			lists = new int[blocks][];
+			sizes = new int[blocks];
+		}
+
+		void add(int b, int e) {
+			int[] list = lists[b];
+			int s = sizes[b];
+			if(list == null) {
+				list = lists[b] = new int[2];
+			} else {
+				for(int i=0; i < s; i++) {
+					if(list[i] == e)
+						return;
+				}
+				if(s == list.length)
+					list = lists[b] = Arrays.copyOf(list, s * 2);
+			}
+			list[s] = e;
+			sizes[b]++;
+			total++;
+		}
+
+		int size(int b) {
+			return sizes[b];
+		}
+
+		int[] offsets() {
+			int[] offsets = new int[lists.length + 1];
+			for(int b=0; b < lists.length; b++) {
+				offsets[b + 1] = offsets[b] + sizes[b];
+			}
+			return offsets;
+		}
+
+		int[] edges() {
+			if(total == 0)
+				return EMPTY;
+			int[] edges = new int[total];
+			int k = 0;
+			for(int b=0; b < lists.length; b++) {
+				if(sizes[b] > 0) {
+					System.arraycopy(lists[b], 0, edges, k, sizes[b]);
+					k += sizes[b];
+				}
+			}
+			return edges;
+		}
+	}
+}
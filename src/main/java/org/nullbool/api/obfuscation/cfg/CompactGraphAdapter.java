@@ -0,0 +1,184 @@
+package org.nullbool.api.obfuscation.cfg;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.nullbool.api.util.LabelHelper;
+import org.objectweb.custom_asm.tree.AbstractInsnNode;
+import org.objectweb.custom_asm.tree.LabelNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * An {@link IControlFlowGraph} that is held as a {@link CompactControlFlowGraph}.
+ * The FlowBlocks (and the maps of labels and names) are only made the first
+ * time that something asks for them, so a cached graph that is never walked
+ * only costs its int arrays. Once made, the FlowBlocks behave exactly like
+ * the ones of a {@link SaneControlFlowGraph}. <br>
+ * 
+ * The int arrays are let go of as soon as the FlowBlocks have been made, as
+ * the blocks can be changed (see {@link #removeBlock(FlowBlock)}) and the
+ * arrays wouldn't describe them anymore. A graph that has been walked costs
+ * the same as a SaneControlFlowGraph.
+ */
+public class CompactGraphAdapter implements IControlFlowGraph {
+
+	private CompactControlFlowGraph graph;
+	private View view;
+
+	/**
+	 * @return The compact graph, or null if the FlowBlocks have already been
+	 *         made from it.
+	 */
+	public synchronized CompactControlFlowGraph compact() {
+		return graph;
+	}
+
+	@Override
+	public IControlFlowGraph create(MethodNode m) throws ControlFlowException {
+		graph = new CompactControlFlowGraph(m);
+		view = null;
+		return this;
+	}
+
+	private synchronized View view() {
+		if(view == null) {
+			view = new View(graph);
+			graph = null;
+		}
+		return view;
+	}
+
+	@Override
+	public List<FlowBlock> blocks() {
+		return view().blocks();
+	}
+
+	@Override
+	public Map<LabelNode, FlowBlock> labels() {
+		return view().labels();
+	}
+
+	@Override
+	public Map<String, FlowBlock> blockNames() {
+		return view().blockNames();
+	}
+
+	@Override
+	public List<ExceptionData> exceptions() {
+		return view().exceptions();
+	}
+
+	@Override
+	public FlowBlock entry() {
+		return view().entry();
+	}
+
+	@Override
+	public FlowBlock exit() {
+		return view().exit();
+	}
+
+	@Override
+	public FlowBlock findTarget(FlowBlock b) {
+		return view().findTarget(b);
+	}
+
+	@Override
+	public FlowBlock findTarget(LabelNode l) {
+		return view().findTarget(l);
+	}
+
+	@Override
+	public void removeBlock(FlowBlock block) {
+		view().removeBlock(block);
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if(view != null)
+			view.destroy();
+		view = null;
+		graph = null;
+	}
+
+	@Override
+	public synchronized boolean hasLoop() {
+		return view != null ? view.hasLoop() : graph.hasLoop();
+	}
+
+	@Override
+	public Iterator<FlowBlock> iterator() {
+		return view().iterator();
+	}
+
+	@Override
+	public String toString() {
+		return view().toString();
+	}
+
+	/**
+	 * A SaneControlFlowGraph whose blocks are loaded from a compact graph
+	 * instead of being built by {@link #create(MethodNode)}.
+	 */
+	private static class View extends SaneControlFlowGraph {
+
+		View(CompactControlFlowGraph graph) {
+			load(graph);
+		}
+
+		/* Makes the blocks in the same order and links them with the same
+		 * calls as AbstractControlFlowGraph.create(), so that every list ends
+		 * up in the same order. */
+		private void load(CompactControlFlowGraph graph) {
+			int n = graph.size();
+			AbstractInsnNode[] insns = graph.insns();
+			FlowBlock[] blocks = new FlowBlock[n + 1];
+			for(int b=0; b < n; b++) {
+				FlowBlock block = new FlowBlock(LabelHelper.createBlockName(b + 1));
+				for(int i=graph.start(b); i < graph.end(b); i++) {
+					block.insns().add(insns[i]);
+					if(insns[i] instanceof LabelNode)
+						labels().put((LabelNode) insns[i], block);
+				}
+				blocks[b] = block;
+				blocks().add(block);
+				blockNames().put(block.id(), block);
+			}
+			blocks[n] = new DummyExitBlock(LabelHelper.createBlockName(n + 1));
+
+			for(int b=0; b < n; b++) {
+				if(b > 0) {
+					blocks[b - 1].setNext(blocks[b]);
+					blocks[b].setPrev(blocks[b - 1]);
+				}
+				if(graph.target(b) != -1)
+					blocks[b].setTarget(blocks[graph.target(b)]);
+				for(int k=0; k < graph.successorCount(b); k++) {
+					FlowBlock succ = blocks[graph.successor(b, k)];
+					blocks[b].addSuccessor(succ);
+					succ.addPredecessor(blocks[b]);
+				}
+				for(int k=0; k < graph.exceptionSuccessorCount(b); k++) {
+					blocks[b].addExceptionSuccessor(blocks[graph.exceptionSuccessor(b, k)]);
+				}
+				for(int k=0; k < graph.exceptionPredecessorCount(b); k++) {
+					blocks[b].addExceptionPredecessor(blocks[graph.exceptionPredecessor(b, k)]);
+				}
+			}
+
+			for(int r=0; r < graph.rangeCount(); r++) {
+				List<FlowBlock> range = new ArrayList<FlowBlock>();
+				int b = graph.rangeFrom(r);
+				do {
+					range.add(blocks[b]);
+					b++;
+				} while(b < graph.rangeTo(r));
+				exceptions().add(new ExceptionData(blocks[graph.rangeHandler(r)], range, new ArrayList<String>(graph.rangeTypes(r))));
+			}
+
+			setBounds(blocks[0], blocks[n], graph.hasLoop());
+		}
+	}
+}
@@ -0,0 +1,498 @@
+package org.nullbool.api.obfuscation.cfg;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nullbool.api.obfuscation.cfg.CompactControlFlowGraph.EdgeLists;
+
+/**
+ * Dominators (or post dominators) of a control flow graph, worked out on
+ * int ids with the iterative algorithm of Cooper, Harvey and Kennedy
+ * ("A Simple, Fast Dominance Algorithm"). The blocks are numbered in reverse
+ * post order so that the intersection of two dominators is just a walk up
+ * two arrays. Exception edges count as normal edges. <br>
+ *
+ * A block has the same id as in the graph it came from: for a
+ * {@link CompactControlFlowGraph} the block ids, and for an
+ * {@link IControlFlowGraph} the index of the block in {@link IControlFlowGraph#blocks()}.
+ * In both cases the exit block is the id after the last block. Blocks that
+ * can't be reached from the root (the entry, or the exit for post dominators)
+ * have no dominator. <br>
+ *
+ * The dominance frontiers and the loops are only worked out the first time
+ * that they're asked for. This does the same job as {@link DominatorTree}
+ * without any maps.
+ */
+public class Dominators {
+
+	private final int size;
+	private final int root;
+	private final int[] outOffsets, outs;
+	private final int[] inOffsets, ins;
+	private final FlowBlock[] blocks;
+
+	/* order[i] is the ith block in reverse post order and rpo[b] is the
+	 * index of b in it (or -1 if b is unreachable). */
+	private final int[] order;
+	private final int[] rpo;
+	private final int[] idoms;
+	/* Pre and post order numbers in the dominator tree, so that a dominates
+	 * b if b's interval is inside a's. */
+	private final int[] pre, post;
+	private final int[] childOffsets, children;
+
+	private int[] frontierOffsets, frontiers;
+	/* For a loop header the header of the loop around it, for any other
+	 * block the header of the innermost loop that it's in. */
+	private int[] loopParents;
+	private boolean[] headers;
+	private int[] depths;
+
+	private Dominators(int size, int root, int[] outOffsets, int[] outs, FlowBlock[] blocks) {
+		this.size = size;
+		this.root = root;
+		this.outOffsets = outOffsets;
+		this.outs = outs;
+		this.blocks = blocks;
+
+		EdgeLists in = new EdgeLists(size);
+		for(int b=0; b < size; b++) {
+			for(int k=outOffsets[b]; k < outOffsets[b + 1]; k++) {
+				in.add(outs[k], b);
+			}
+		}
+		inOffsets = in.offsets();
+		ins = in.edges();
+
+		rpo = new int[size];
+		order = reversePostOrder();
+		idoms = computeIdoms();
+
+		int[] childCounts = new int[size + 1];
+		for(int b=0; b < size; b++) {
+			if(idoms[b] != -1)
+				childCounts[idoms[b] + 1]++;
+		}
+		for(int b=0; b < size; b++) {
+			childCounts[b + 1] += childCounts[b];
+		}
+		childOffsets = childCounts;
+		children = new int[childCounts[size]];
+		int[] fill = Arrays.copyOf(childCounts, size);
+		/* Going in reverse post order keeps the children in that order too. */
+		for(int i=1; i < order.length; i++) {
+			int b = order[i];
+			children[fill[idoms[b]]++] = b;
+		}
+
+		pre = new int[size];
+		post = new int[size];
+		number();
+	}
+
+	/**
+	 * @return The dominators of the blocks of the graph, from its entry.
+	 */
+	public static Dominators dominators(CompactControlFlowGraph graph) {
+		EdgeLists out = new EdgeLists(graph.size() + 1);
+		for(int b=0; b < graph.size(); b++) {
+			for(int k=0; k < graph.successorCount(b); k++) {
+				out.add(b, graph.successor(b, k));
+			}
+			for(int k=0; k < graph.exceptionSuccessorCount(b); k++) {
+				out.add(b, graph.exceptionSuccessor(b, k));
+			}
+		}
+		return new Dominators(graph.size() + 1, graph.entry(), out.offsets(), out.edges(), null);
+	}
+
+	/**
+	 * @return The post dominators of the blocks of the graph, from its exit.
+	 */
+	public static Dominators postDominators(CompactControlFlowGraph graph) {
+		EdgeLists out = new EdgeLists(graph.size() + 1);
+		for(int b=0; b < graph.size(); b++) {
+			for(int k=0; k < graph.successorCount(b); k++) {
+				out.add(graph.successor(b, k), b);
+			}
+			for(int k=0; k < graph.exceptionSuccessorCount(b); k++) {
+				out.add(graph.exceptionSuccessor(b, k), b);
+			}
+		}
+		return new Dominators(graph.size() + 1, graph.exit(), out.offsets(), out.edges(), null);
+	}
+
+	/**
+	 * @return The dominators of the blocks of the graph, from its entry.
+	 */
+	public static Dominators dominators(IControlFlowGraph graph) {
+		return create(graph, false);
+	}
+
+	/**
+	 * @return The post dominators of the blocks of the graph, from its exit.
+	 */
+	public static Dominators postDominators(IControlFlowGraph graph) {
+		return create(graph, true);
+	}
+
+	private static Dominators create(IControlFlowGraph graph, boolean reverse) {
+		List<FlowBlock> list = graph.blocks();
+		int n = list.size();
+		FlowBlock[] blocks = list.toArray(new FlowBlock[n + 1]);
+		blocks[n] = graph.exit();
+		Map<FlowBlock, Integer> ids = new IdentityHashMap<FlowBlock, Integer>();
+		for(int b=0; b <= n; b++) {
+			ids.put(blocks[b], b);
+		}
+
+		EdgeLists out = new EdgeLists(n + 1);
+		for(int b=0; b < n; b++) {
+			link(out, ids, b, blocks[b].successors(), reverse);
+			link(out, ids, b, blocks[b].exceptionSuccessors(), reverse);
+		}
+		Integer entry = ids.get(graph.entry());
+		return new Dominators(n + 1, reverse ? n : entry == null ? 0 : entry, out.offsets(), out.edges(), blocks);
+	}
+
+	private static void link(EdgeLists out, Map<FlowBlock, Integer> ids, int b, List<FlowBlock> succs, boolean reverse) {
+		for(FlowBlock succ : succs) {
+			Integer s = ids.get(succ);
+			/* Blocks that were removed from the graph but are still linked. */
+			if(s == null)
+				continue;
+			if(reverse)
+				out.add(s, b);
+			else
+				out.add(b, s);
+		}
+	}
+
+	private int[] reversePostOrder() {
+		Arrays.fill(rpo, -1);
+		int[] postOrder = new int[size];
+		int count = 0;
+		int[] stack = new int[size];
+		int[] next = new int[size];
+		int top = 0;
+		stack[top++] = root;
+		rpo[root] = 0;
+		while(top > 0) {
+			int v = stack[top - 1];
+			int k = outOffsets[v] + next[v];
+			if(k < outOffsets[v + 1]) {
+				next[v]++;
+				int w = outs[k];
+				if(rpo[w] == -1) {
+					rpo[w] = 0;
+					stack[top++] = w;
+				}
+			} else {
+				top--;
+				postOrder[count++] = v;
+			}
+		}
+
+		int[] order = new int[count];
+		for(int i=0; i < count; i++) {
+			order[i] = postOrder[count - 1 - i];
+			rpo[order[i]] = i;
+		}
+		return order;
+	}
+
+	private int[] computeIdoms() {
+		/* Indexed by the reverse post order numbers while they're worked out. */
+		int count = order.length;
+		int[] doms = new int[count];
+		Arrays.fill(doms, -1);
+		doms[0] = 0;
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i=1; i < count; i++) {
+				int b = order[i];
+				int idom = -1;
+				for(int k=inOffsets[b]; k < inOffsets[b + 1]; k++) {
+					int p = rpo[ins[k]];
+					if(p == -1 || doms[p] == -1)
+						continue;
+					idom = idom == -1 ? p : intersect(doms, p, idom);
+				}
+				if(doms[i] != idom) {
+					doms[i] = idom;
+					changed = true;
+				}
+			}
+		}
+
+		int[] idoms = new int[size];
+		Arrays.fill(idoms, -1);
+		for(int i=1; i < count; i++) {
+			idoms[order[i]] = order[doms[i]];
+		}
+		return idoms;
+	}
+
+	private static int intersect(int[] doms, int a, int b) {
+		while(a != b) {
+			while(a > b)
+				a = doms[a];
+			while(b > a)
+				b = doms[b];
+		}
+		return a;
+	}
+
+	private void number() {
+		Arrays.fill(pre, -1);
+		Arrays.fill(post, -1);
+		int[] stack = new int[size];
+		int[] next = new int[size];
+		int top = 0, preCount = 0, postCount = 0;
+		stack[top++] = root;
+		pre[root] = preCount++;
+		while(top > 0) {
+			int v = stack[top - 1];
+			int k = childOffsets[v] + next[v];
+			if(k < childOffsets[v + 1]) {
+				next[v]++;
+				int c = children[k];
+				pre[c] = preCount++;
+				stack[top++] = c;
+			} else {
+				top--;
+				post[v] = postCount++;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of blocks, including the exit.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The block that the dominators are worked out from.
+	 */
+	public int root() {
+		return root;
+	}
+
+	public boolean isReachable(int b) {
+		return rpo[b] != -1;
+	}
+
+	/**
+	 * @return The number of blocks that can be reached from the root.
+	 */
+	public int orderCount() {
+		return order.length;
+	}
+
+	/**
+	 * @return The ith reachable block in reverse post order.
+	 */
+	public int order(int i) {
+		return order[i];
+	}
+
+	/**
+	 * @return The index of the block in the reverse post order or -1 if it's unreachable.
+	 */
+	public int orderIndex(int b) {
+		return rpo[b];
+	}
+
+	/**
+	 * @return The immediate dominator of the block or -1 for the root and unreachable blocks.
+	 */
+	public int idom(int b) {
+		return idoms[b];
+	}
+
+	/**
+	 * @return True if every path from the root to b goes through a (every
+	 *         reachable block dominates itself).
+	 */
+	public boolean dominates(int a, int b) {
+		if(pre[a] == -1 || pre[b] == -1)
+			return false;
+		return pre[a] <= pre[b] && post[b] <= post[a];
+	}
+
+	public boolean strictlyDominates(int a, int b) {
+		return a != b && dominates(a, b);
+	}
+
+	/**
+	 * @return The number of blocks that the block immediately dominates.
+	 */
+	public int childCount(int b) {
+		return childOffsets[b + 1] - childOffsets[b];
+	}
+
+	public int child(int b, int k) {
+		return children[childOffsets[b] + k];
+	}
+
+	/**
+	 * @return The number of blocks in the dominance frontier of the block.
+	 */
+	public int frontierCount(int b) {
+		computeFrontiers();
+		return frontierOffsets[b + 1] - frontierOffsets[b];
+	}
+
+	public int frontier(int b, int k) {
+		computeFrontiers();
+		return frontiers[frontierOffsets[b] + k];
+	}
+
+	/* Every join block is in the frontier of the blocks on the way up the
+	 * dominator tree from each of its predecessors to its own dominator. The
+	 * root is always a join if anything jumps back to it, since it's also
+	 * entered from outside of the graph. */
+	private synchronized void computeFrontiers() {
+		if(frontiers != null)
+			return;
+
+		EdgeLists df = new EdgeLists(size);
+		for(int i=0; i < order.length; i++) {
+			int b = order[i];
+			if(b != root && inOffsets[b + 1] - inOffsets[b] < 2)
+				continue;
+			for(int k=inOffsets[b]; k < inOffsets[b + 1]; k++) {
+				int runner = ins[k];
+				if(rpo[runner] == -1)
+					continue;
+				while(runner != -1 && runner != idoms[b]) {
+					df.add(runner, b);
+					runner = idoms[runner];
+				}
+			}
+		}
+		frontierOffsets = df.offsets();
+		frontiers = df.edges();
+	}
+
+	/**
+	 * @return True if the block is the header of a natural loop, i.e. one of
+	 *         its predecessors is a block that it dominates.
+	 */
+	public boolean isLoopHeader(int b) {
+		computeLoops();
+		return headers[b];
+	}
+
+	/**
+	 * @return The header of the innermost loop that the block is in (the block
+	 *         itself if it's a header) or -1 if it isn't in a loop.
+	 */
+	public int loopHeader(int b) {
+		computeLoops();
+		return headers[b] ? b : loopParents[b];
+	}
+
+	/**
+	 * @return The header of the loop that the loop with the given header is
+	 *         nested in or -1 if it's an outermost loop.
+	 */
+	public int loopParent(int header) {
+		computeLoops();
+		return headers[header] ? loopParents[header] : -1;
+	}
+
+	/**
+	 * @return The number of loops that the block is in.
+	 */
+	public int loopDepth(int b) {
+		computeLoops();
+		return depths[b];
+	}
+
+	/* Headers are visited from the last in reverse post order to the first,
+	 * so inner loops are found before the loops around them. The body of a
+	 * loop is found by walking back from the blocks that jump to the header.
+	 * When the walk hits a block that is already in a loop, it carries on
+	 * from the outermost header found so far for it, which then becomes a
+	 * child of the current loop. */
+	private synchronized void computeLoops() {
+		if(depths != null)
+			return;
+
+		int[] parents = new int[size];
+		Arrays.fill(parents, -1);
+		boolean[] headers = new boolean[size];
+		int[] stack = new int[Math.max(4, ins.length)];
+
+		for(int i=order.length - 1; i >= 0; i--) {
+			int h = order[i];
+			int top = 0;
+			for(int k=inOffsets[h]; k < inOffsets[h + 1]; k++) {
+				if(dominates(h, ins[k])) {
+					headers[h] = true;
+					stack = push(stack, top++, ins[k]);
+				}
+			}
+
+			while(top > 0) {
+				int x = stack[--top];
+				while(parents[x] != -1)
+					x = parents[x];
+				if(x == h)
+					continue;
+				parents[x] = h;
+				for(int k=inOffsets[x]; k < inOffsets[x + 1]; k++) {
+					if(dominates(h, ins[k]))
+						stack = push(stack, top++, ins[k]);
+				}
+			}
+		}
+
+		int[] depths = new int[size];
+		for(int i=0; i < order.length; i++) {
+			int b = order[i];
+			int outer = parents[b] == -1 ? 0 : depths[parents[b]];
+			depths[b] = headers[b] ? outer + 1 : outer;
+		}
+
+		loopParents = parents;
+		this.headers = headers;
+		this.depths = depths;
+	}
+
+	private static int[] push(int[] stack, int top, int v) {
+		if(top == stack.length)
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		stack[top] = v;
+		return stack;
+	}
+
+	/**
+	 * @return The FlowBlock with the id, if these were worked out from an {@link IControlFlowGraph}.
+	 */
+	public FlowBlock block(int b) {
+		if(blocks == null)
+			throw new IllegalStateException("Not made from FlowBlocks.");
+		return blocks[b];
+	}
+
+	/**
+	 * @return The id of the block or -1 if it isn't in the graph.
+	 */
+	public int id(FlowBlock block) {
+		if(blocks == null)
+			throw new IllegalStateException("Not made from FlowBlocks.");
+		for(int b=0; b < blocks.length; b++) {
+			if(blocks[b] == block)
+				return b;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,139 @@
+package org.nullbool.api.obfuscation.cfg.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+import org.nullbool.api.obfuscation.cfg.CompactControlFlowGraph;
+import org.nullbool.api.obfuscation.cfg.ControlFlowException;
+import org.nullbool.api.obfuscation.cfg.DominatorTree;
+import org.nullbool.api.obfuscation.cfg.Dominators;
+import org.nullbool.api.obfuscation.cfg.FlowBlock;
+import org.nullbool.api.obfuscation.cfg.SaneControlFlowGraph;
+import org.nullbool.api.util.JarParser;
+import org.objectweb.custom_asm.tree.ClassNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * Times {@link DominatorTree} against {@link Dominators} (on FlowBlocks and
+ * on a {@link CompactControlFlowGraph}) on the largest methods of a gamepack
+ * and checks that they find the same immediate dominators. Each run works
+ * out the dominators and the dominance frontiers of every method.
+ *
+ * Usage: DominatorBenchmark &lt;gamepack&gt; [methods] [rounds]
+ */
+public class DominatorBenchmark {
+
+	public static void main(String[] args) throws IOException, ControlFlowException {
+		if(args.length < 1) {
+			System.err.println("Usage: DominatorBenchmark <gamepack> [methods] [rounds]");
+			return;
+		}
+
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+		Map<String, ClassNode> classes;
+		try(JarFile jar = new JarFile(new File(args[0]))) {
+			classes = new JarParser(jar).getParsedClasses();
+		}
+
+		List<MethodNode> methods = new ArrayList<MethodNode>();
+		for(ClassNode cn : classes.values()) {
+			for(MethodNode m : cn.methods) {
+				if(m.instructions.size() > 0)
+					methods.add(m);
+			}
+		}
+		methods.sort((m1, m2) -> Integer.compare(m2.instructions.size(), m1.instructions.size()));
+		methods = methods.subList(0, Math.min(count, methods.size()));
+
+		/* DominatorTree can't handle an exception handler that is only
+		 * reached through exception edges, so those methods are left out. */
+		List<SaneControlFlowGraph> graphs = new ArrayList<SaneControlFlowGraph>();
+		List<CompactControlFlowGraph> compacts = new ArrayList<CompactControlFlowGraph>();
+		int blocks = 0, skipped = 0;
+		for(MethodNode m : methods) {
+			SaneControlFlowGraph graph = new SaneControlFlowGraph();
+			graph.create(m);
+			try {
+				new DominatorTree(graph);
+			} catch(RuntimeException e) {
+				skipped++;
+				continue;
+			}
+			graphs.add(graph);
+			compacts.add(new CompactControlFlowGraph(m));
+			blocks += graph.blocks().size();
+		}
+		System.out.printf("%d methods, %d blocks (largest has %d instructions), %d methods that DominatorTree fails on left out.%n", graphs.size(), blocks, methods.get(0).instructions.size(), skipped);
+
+		check(graphs);
+
+		for(int r=0; r < rounds; r++) {
+			boolean print = r >= rounds / 2;
+			long old = time(graphs, 0);
+			long flow = time(graphs, 1);
+			long compact = time(compacts);
+			if(print)
+				System.out.printf("round %d: DominatorTree %.2fms, Dominators (FlowBlocks) %.2fms, Dominators (compact) %.2fms.%n", r, old / 1e6, flow / 1e6, compact / 1e6);
+		}
+	}
+
+	private static long time(List<SaneControlFlowGraph> graphs, int type) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for(SaneControlFlowGraph graph : graphs) {
+			if(type == 0) {
+				sink += new DominatorTree(graph).getDominanceFrontiers().size();
+			} else {
+				Dominators doms = Dominators.dominators(graph);
+				sink += doms.frontierCount(doms.root());
+			}
+		}
+		long time = System.nanoTime() - start;
+		if(sink == Long.MIN_VALUE)
+			System.out.println();
+		return time;
+	}
+
+	private static long time(List<CompactControlFlowGraph> graphs) {
+		long sink = 0;
+		long start = System.nanoTime();
+		for(CompactControlFlowGraph graph : graphs) {
+			Dominators doms = Dominators.dominators(graph);
+			sink += doms.frontierCount(doms.root());
+		}
+		long time = System.nanoTime() - start;
+		if(sink == Long.MIN_VALUE)
+			System.out.println();
+		return time;
+	}
+
+	/* DominatorTree only follows the normal successors when it collects the
+	 * predecessors, so blocks that are only reached through an exception edge
+	 * are counted but not expected to match. */
+	private static void check(List<SaneControlFlowGraph> graphs) {
+		int same = 0, different = 0;
+		for(SaneControlFlowGraph graph : graphs) {
+			Dominators doms = Dominators.dominators(graph);
+			for(Map.Entry<FlowBlock, Set<FlowBlock>> e : new DominatorTree(graph).getDominatorTree().entrySet()) {
+				if(e.getKey() == null)
+					continue;
+				int idom = doms.id(e.getKey());
+				for(FlowBlock b : e.getValue()) {
+					int id = doms.id(b);
+					if(id != -1 && doms.idom(id) == idom)
+						same++;
+					else
+						different++;
+				}
+			}
+		}
+		System.out.printf("Immediate dominators: %d the same, %d different.%n", same, different);
+	}
+}
@@ -1,12 +1,17 @@
 package org.nullbool.api.obfuscation.number;
 
+import java.util.List;
+import java.util.Map.Entry;
+
 import org.nullbool.api.Context;
+import org.nullbool.api.obfuscation.ForkableVisitor;
+import org.nullbool.api.obfuscation.ReadOnlyVisitor;
 import org.objectweb.custom_asm.commons.cfg.tree.NodeVisitor;
 import org.objectweb.custom_asm.commons.cfg.tree.node.ArithmeticNode;
 import org.objectweb.custom_asm.commons.cfg.tree.node.FieldMemberNode;
 import org.objectweb.custom_asm.commons.cfg.tree.node.NumberNode;
 
-public class MultiplierVisitor extends NodeVisitor {
+public class MultiplierVisitor extends NodeVisitor implements ForkableVisitor<MultiplierVisitor>, ReadOnlyVisitor {
 
 	private final MultiplierHandler handler;
 	private int eCount;
@@ -29,6 +34,27 @@ public class MultiplierVisitor extends NodeVisitor {
 		return handler;
 	}
 
+	@Override
+	public MultiplierVisitor fork() {
+		return new MultiplierVisitor(new MultiplierHandler());
+	}
+
+	@Override
+	public void join(MultiplierVisitor fork) {
+		for (Entry<String, List<Long>> e : fork.handler.getEncoders().entrySet()) {
+			for (long encoder : e.getValue()) {
+				handler.addEncoder(e.getKey(), encoder);
+			}
+		}
+		for (Entry<String, List<Long>> e : fork.handler.getDecoders().entrySet()) {
+			for (long decoder : e.getValue()) {
+				handler.addDecoder(e.getKey(), decoder);
+			}
+		}
+		eCount += fork.eCount;
+		dCount += fork.dCount;
+	}
+
 	private boolean isSetting(final ArithmeticNode an) {
 		return an.hasParent() && ((an.parent().opcode() == PUTSTATIC) || (an.parent().opcode() == PUTFIELD));
 	}
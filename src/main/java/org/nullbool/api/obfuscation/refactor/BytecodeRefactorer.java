@@ -3,12 +3,13 @@ package org.nullbool.api.obfuscation.refactor;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.objectweb.custom_asm.Opcodes;
 import org.objectweb.custom_asm.Type;
@@ -23,6 +24,14 @@ import org.objectweb.custom_asm.tree.MultiANewArrayInsnNode;
 import org.objectweb.custom_asm.tree.TypeInsnNode;
 
 /**
+ * Renames the classes of a jar and their members (and every reference to
+ * them) with the names given by an {@link IRemapper}. <br>
+ *
+ * The new names are resolved through caches that are shared by every class,
+ * so each name is only asked for once. The classes are refactored in two
+ * sweeps, the first of which only resolves the names and the second sets
+ * them. Both sweeps are split between the threads of the pool if one is set.
+ *
  * @author Bibl (don't ban me pls)
  * @created 25 May 2015 (actually before this)
  */
@@ -37,17 +46,35 @@ public class BytecodeRefactorer implements Opcodes {
 	private final Map<String, String>   fieldMappings;
 	private final Map<String, String>   descMappings;
 	private final Map<String, String>   methodMappings;
+	private ForkJoinPool                pool;
 
 	public BytecodeRefactorer(Collection<ClassNode> classes, IRemapper remapper) {
+		this(classes, remapper, new ClassTree(classes));
+	}
+
+	/**
+	 * @param classTree The tree of the classes, which has its names updated once
+	 *        the classes have been renamed.
+	 */
+	public BytecodeRefactorer(Collection<ClassNode> classes, IRemapper remapper, ClassTree classTree) {
 		this.classes    = classes;
 		this.remapper   = remapper;
-		classTree       = new ClassTree(classes);
+		this.classTree  = classTree;
 		methodCache     = new MethodCache(classes);
 		methodChain     = new InheritedMethodMap(classTree);
-		classMappings   = new HashMap<String, String>();
-		fieldMappings   = new HashMap<String, String>();
-		descMappings    = new HashMap<String, String>();
-		methodMappings  = new HashMap<String, String>();
+		classMappings   = new ConcurrentHashMap<String, String>();
+		fieldMappings   = new ConcurrentHashMap<String, String>();
+		descMappings    = new ConcurrentHashMap<String, String>();
+		methodMappings  = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * @param pool The pool to refactor the classes on or null to refactor
+	 *        them on the calling thread. The remapper has to be safe to call
+	 *        from more than one thread if one is set.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
 	}
 
 	public void start() {
@@ -55,180 +82,164 @@ public class BytecodeRefactorer implements Opcodes {
 	}
 
 	private void startImpl() {
-		
-		//int fieldNodes    = 0;
-		//int methodNodes   = 0;
-		
-		//int fieldCalls    = 0;
-		//int methodCalls   = 0;
-		
-		//TypeInsnNode
-		//int newCalls      = 0;
-		//int newArray      = 0;
-		//int checkcasts    = 0;
-		//int instances     = 0;
-		//int mArrray       = 0;
-		
-		//int classc        = 0;
-		//int iface         = 0;
-		
-		Map<ClassNode, String> classMappings = new HashMap<ClassNode, String>();
-		Map<String, String> superMappings = new HashMap<String, String>();
-		Map<String, String> interfaceMappings = new HashMap<String, String>();
-		Map<FieldNode, Tuple3> fieldMappings = new HashMap<FieldNode, Tuple3>();
-		Map<MethodNode, Tuple3> methodMappings = new HashMap<MethodNode, Tuple3>();
-		
-		Map<FieldInsnNode, Tuple3> finMappings = new HashMap<FieldInsnNode, Tuple3>();
-		Map<MethodInsnNode, Tuple3> minMappings = new HashMap<MethodInsnNode, Tuple3>();
-		Map<AbstractInsnNode, String> singAinMappings = new HashMap<AbstractInsnNode, String>();
-		
-		for (ClassNode cn : classes) {
-			for(FieldNode fn : cn.fields) {
-				Tuple3 t = new Tuple3(fn.owner.name, getMappedFieldName(fn), transformFieldDesc(fn.desc));
-				fieldMappings.put(fn, t);
+		ClassNode[] nodes = classes.toArray(new ClassNode[classes.size()]);
+
+		/* Everything is resolved before anything is renamed, as the names
+		 * are worked out from the old names of the classes and members.
+		 * The second sweep makes the same lookups, which are then all
+		 * cached, and sets the new names. */
+		forEach(nodes, false);
+		forEach(nodes, true);
+
+		classTree.refreshNames();
+		classTree.invalidateMembers();
+	}
+
+	private void forEach(ClassNode[] nodes, boolean apply) {
+		Refactor task = new Refactor(nodes, 0, nodes.length, apply);
+		if(pool != null)
+			pool.invoke(task);
+		else
+			task.refactor();
+	}
+
+	/* Works out the new names of a class, its members and the references in
+	 * its code and sets them if apply is set. A class is only ever changed
+	 * by the thread that refactors it and its name is set last, as the names
+	 * of its members are looked up by it. */
+	private void refactor(ClassNode cn, boolean apply) {
+		for(FieldNode fn : cn.fields) {
+			String name = getMappedFieldName(fn);
+			String desc = transformFieldDesc(fn.desc);
+			if(apply) {
+				fn.name = name;
+				fn.desc = desc;
 			}
-			
-			for(MethodNode mn : cn.methods) {
-				Tuple3 t = new Tuple3(mn.owner.name, getMappedMethodName(mn), transformMethodDesc(mn.desc));
-				methodMappings.put(mn, t);
-				
-				for(AbstractInsnNode ain : mn.instructions.toArray()) {
-					if(ain instanceof FieldInsnNode) {
-						FieldInsnNode fin = (FieldInsnNode) ain;
-						String newOwner = getMappedClassName(fin.owner);
-						String newName  = getMappedFieldName(fin.owner, fin.name, fin.desc, ain.getOpcode() == PUTSTATIC || ain.getOpcode() == GETSTATIC);
-						String newDesc  = transformFieldDesc(fin.desc);
-						Tuple3 t2 = new Tuple3(newOwner, newName, newDesc);
-						finMappings.put(fin, t2);
-					} else if(ain instanceof MethodInsnNode) {
-						MethodInsnNode min = (MethodInsnNode) ain;
-						try {
-							String newOwner = getMappedClassName(min.owner);
-							String newName  = getMappedMethodName(min.owner, min.name, min.desc, min.getOpcode() == INVOKESTATIC);
-							String newDesc  = transformMethodDesc(min.desc);
-							Tuple3 t2 = new Tuple3(newOwner, newName, newDesc);
-							minMappings.put(min, t2);
-						} catch(RuntimeException e) {
-							System.out.printf("Error in %s.%n", mn.key());
-							System.out.printf("Looking for %s.%n", ain);
-							ClassNode c = classTree.getClass(min.owner);
-							System.out.println("sups: " + classTree.getSupers(c));
-							throw e;
-						}
-					} else if(ain instanceof TypeInsnNode) {
-						TypeInsnNode tin = (TypeInsnNode) ain;
-						
-						if(tin.getOpcode() == NEW || tin.getOpcode() == ANEWARRAY) {
-							String desc  = tin.desc;
-							if(desc.startsWith("[") || desc.endsWith(";")) {
-								singAinMappings.put(tin, transformFieldDesc(desc));
-							} else {
-								singAinMappings.put(tin, getMappedClassName(desc));
-							}
-						} else if(tin.getOpcode() == CHECKCAST || tin.getOpcode() == INSTANCEOF) {
-							//ALOAD 1
-							//CHECKCAST java/lang/Character
-							//INVOKEVIRTUAL java/lang/Character.charValue ()C
-							//Checkcasts are always object casts
-							String desc  = tin.desc;
-							if(desc.startsWith("[") || desc.endsWith(";")) {
-								singAinMappings.put(tin, transformFieldDesc(desc));
-							} else {
-								singAinMappings.put(tin, getMappedClassName(desc));
-							}
+		}
+
+		for(MethodNode mn : cn.methods) {
+			String name = getMappedMethodName(mn);
+			String desc = transformMethodDesc(mn.desc);
+
+			for(AbstractInsnNode ain : mn.instructions.snapshot()) {
+				if(ain instanceof FieldInsnNode) {
+					FieldInsnNode fin = (FieldInsnNode) ain;
+					String newOwner = getMappedClassName(fin.owner);
+					String newName  = getMappedFieldName(fin.owner, fin.name, fin.desc, ain.getOpcode() == PUTSTATIC || ain.getOpcode() == GETSTATIC);
+					String newDesc  = transformFieldDesc(fin.desc);
+					if(apply) {
+						fin.owner = newOwner;
+						fin.name = newName;
+						fin.desc = newDesc;
+					}
+				} else if(ain instanceof MethodInsnNode) {
+					MethodInsnNode min = (MethodInsnNode) ain;
+					try {
+						String newOwner = getMappedClassName(min.owner);
+						String newName  = getMappedMethodName(min.owner, min.name, min.desc, min.getOpcode() == INVOKESTATIC);
+						String newDesc  = transformMethodDesc(min.desc);
+						if(apply) {
+							min.owner = newOwner;
+							min.name = newName;
+							min.desc = newDesc;
 						}
-					 } else if(ain instanceof MultiANewArrayInsnNode) {
-						MultiANewArrayInsnNode main = (MultiANewArrayInsnNode) ain;
-						singAinMappings.put(main, transformFieldDesc(main.desc));
-					} else if(ain instanceof LdcInsnNode) {
-						LdcInsnNode lin = (LdcInsnNode) ain;
-						
-						if(lin.cst instanceof Type) {
-							singAinMappings.put(lin, transformFieldDesc(((Type) lin.cst).getDescriptor()));
+					} catch(RuntimeException e) {
+						System.out.printf("Error in %s.%n", mn.key());
+						System.out.printf("Looking for %s.%n", ain);
+						ClassNode c = classTree.getClass(min.owner);
+						System.out.println("sups: " + classTree.getSupers(c));
+						throw e;
+					}
+				} else if(ain instanceof TypeInsnNode) {
+					TypeInsnNode tin = (TypeInsnNode) ain;
+					
+					//ALOAD 1
+					//CHECKCAST java/lang/Character
+					//INVOKEVIRTUAL java/lang/Character.charValue ()C
+					//Checkcasts are always object casts
+					int op = tin.getOpcode();
+					if(op == NEW || op == ANEWARRAY || op == CHECKCAST || op == INSTANCEOF) {
+						String desc0 = tin.desc;
+						String newDesc;
+						if(desc0.startsWith("[") || desc0.endsWith(";")) {
+							newDesc = transformFieldDesc(desc0);
+						} else {
+							newDesc = getMappedClassName(desc0);
 						}
+						if(apply)
+							tin.desc = newDesc;
+					}
+				} else if(ain instanceof MultiANewArrayInsnNode) {
+					MultiANewArrayInsnNode main = (MultiANewArrayInsnNode) ain;
+					String newDesc = transformFieldDesc(main.desc);
+					if(apply)
+						main.desc = newDesc;
+				} else if(ain instanceof LdcInsnNode) {
+					LdcInsnNode lin = (LdcInsnNode) ain;
+					
+					if(lin.cst instanceof Type) {
+						String newDesc = transformFieldDesc(((Type) lin.cst).getDescriptor());
+						if(apply)
+							lin.cst = Type.getType(newDesc);
 					}
 				}
 			}
-			
-			superMappings.put(cn.superName, getMappedClassName(cn.superName));
-			classMappings.put(cn, getMappedClassName(cn.name));
-			
-			for(String oldIface : cn.interfaces) {
-				interfaceMappings.put(oldIface, getMappedClassName(oldIface));
+
+			if(apply) {
+				mn.name = name;
+				mn.desc = desc;
 			}
 		}
-		
-		
-		// ======================= FIX ==================================
-		
-		
-		for (ClassNode cn : classes) {
-			cn.name = classMappings.get(cn);
-			cn.superName = superMappings.get(cn.superName);
-			
-			List<String> newInterfaces = new ArrayList<String>();
-			for(String oldIface : cn.interfaces) {
-				newInterfaces.add(interfaceMappings.get(oldIface));
-			}
-			cn.interfaces = newInterfaces;
-			
-			for(FieldNode fn : cn.fields) {
-				Tuple3 t = fieldMappings.get(fn);
-				fn.name = t.name;
-				fn.desc = t.desc;
-			}
-			
-			for(MethodNode mn : cn.methods) {
-				Tuple3 t = methodMappings.get(mn);
-				mn.name = t.name;
-				mn.desc = t.desc;
-			}
+
+		String superName = getMappedClassName(cn.superName);
+		List<String> newInterfaces = new ArrayList<String>();
+		for(String oldIface : cn.interfaces) {
+			newInterfaces.add(getMappedClassName(oldIface));
 		}
-		
-		for(Entry<FieldInsnNode, Tuple3> e : finMappings.entrySet()) {
-			FieldInsnNode fin = e.getKey();
-			Tuple3 t = e.getValue();
-			fin.owner = t.owner;
-			fin.name = t.name;
-			fin.desc = t.desc;
+		String name = getMappedClassName(cn.name);
+		if(apply) {
+			cn.superName = superName;
+			cn.interfaces = newInterfaces;
+			cn.name = name;
 		}
-		
-		for(Entry<MethodInsnNode, Tuple3> e : minMappings.entrySet()) {
-			MethodInsnNode fin = e.getKey();
-			Tuple3 t = e.getValue();
-			fin.owner = t.owner;
-			fin.name = t.name;
-			fin.desc = t.desc;
+	}
+
+	private class Refactor extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 8;
+
+		private final ClassNode[] nodes;
+		private final int start, end;
+		private final boolean apply;
+
+		Refactor(ClassNode[] nodes, int start, int end, boolean apply) {
+			this.nodes = nodes;
+			this.start = start;
+			this.end = end;
+			this.apply = apply;
 		}
-		
-		for(Entry<AbstractInsnNode, String> e : singAinMappings.entrySet()) {
-			AbstractInsnNode ain = e.getKey();
-			String desc = e.getValue();
-			if(ain instanceof TypeInsnNode) {
-				((TypeInsnNode) ain).desc = desc;
-			} else if(ain instanceof MultiANewArrayInsnNode) {
-				((MultiANewArrayInsnNode) ain).desc = desc;
-			} else if(ain instanceof LdcInsnNode) {
-				((LdcInsnNode) ain).cst = Type.getType(desc);
+
+		@Override
+		protected void compute() {
+			if(end - start <= THRESHOLD) {
+				refactor();
 			} else {
-				throw new RuntimeException();
+				int mid = (start + end) >>> 1;
+				invokeAll(new Refactor(nodes, start, mid, apply), new Refactor(nodes, mid, end, apply));
+			}
+		}
+
+		void refactor() {
+			for(int i=start; i < end; i++) {
+				BytecodeRefactorer.this.refactor(nodes[i], apply);
 			}
 		}
-		
-		
-		// TODO: Uncomment
-//		if(Context.current().getFlags().getOrDefault("basicout", true)) {
-//			System.out.printf("Changed: %n");
-//			System.out.printf("   %d classes and %d interfaces. %n", classc, iface);
-//			System.out.printf("   %d fields  and %d field calls. %n", fieldNodes, fieldCalls);
-//			System.out.printf("   %d methods and %d method calls. %n", methodNodes, methodCalls);
-//			System.out.printf("   %d news, %d anewarrays, %d checkcasts, %d instancofs, %d mnewarrays. %n", newCalls, newArray, checkcasts, instances, mArrray);
-//		}
 	}
 	
 	public String transformMethodDesc(String desc){
-		if(descMappings.containsKey(desc))
-			return descMappings.get(desc);
+		String cached = descMappings.get(desc);
+		if(cached != null)
+			return cached;
 		
 		Type[] args = Type.getArgumentTypes(desc);
 		Type ret    = Type.getReturnType(desc);
@@ -245,10 +256,7 @@ public class BytecodeRefactorer implements Opcodes {
 		else
 			sb.append(transformFieldDesc(ret.getDescriptor()));
 		
-		String newDesc = sb.toString();
-		descMappings.put(desc, newDesc);
-		
-		return newDesc;
+		return cache(descMappings, desc, sb.toString());
 	}
 	
 	public String transformFieldDesc(String desc){
@@ -257,8 +265,9 @@ public class BytecodeRefactorer implements Opcodes {
 		if(isPrimitive(nonArrayDesc))
 			return desc;
 		
-		if(descMappings.containsKey(desc))
-			return descMappings.get(desc);
+		String cached = descMappings.get(desc);
+		if(cached != null)
+			return cached;
 		
 		//Type type = Type.getType(desc);
 		//String oldClassName = type.getInternalName();
@@ -270,9 +279,15 @@ public class BytecodeRefactorer implements Opcodes {
 		String newBaseDesc = String.format("L%s;", getMappedClassName(nonArrayDesc));
 		
 		String newDesc     = createArrayDescriptor(arraySize) + newBaseDesc;
-		descMappings.put(desc, newDesc);
-		
-		return newDesc;
+		return cache(descMappings, desc, newDesc);
+	}
+
+	/* Two threads may work out the same name at once, in which case they
+	 * both end up with the first one. The names are cached with putIfAbsent
+	 * rather than computeIfAbsent as working one out may look up others. */
+	private static String cache(Map<String, String> map, String key, String value) {
+		String old = map.putIfAbsent(key, value);
+		return old != null ? old : value;
 	}
 	
 	public static boolean isPrimitive(String desc) {
@@ -300,8 +315,9 @@ public class BytecodeRefactorer implements Opcodes {
 	}
 
 	public String getMappedClassName(String oldName) {
-		if (classMappings.containsKey(oldName))
-			return classMappings.get(oldName);
+		String cached = classMappings.get(oldName);
+		if (cached != null)
+			return cached;
 		
 		String newName = remapper.resolveClassName(oldName);
 		
@@ -310,8 +326,7 @@ public class BytecodeRefactorer implements Opcodes {
 		else
 			newName = newName.replace(".", "/");
 		
-		classMappings.put(oldName, newName);
-		return newName;
+		return cache(classMappings, oldName, newName);
 	}
 	
 	public String getMappedFieldName(FieldNode f){
@@ -319,13 +334,14 @@ public class BytecodeRefactorer implements Opcodes {
 	}
 	
 	public String getMappedFieldName(String owner, String name, String desc, boolean isStatic) {
-		String fullKey = String.format("%s.%s %s", owner, name, desc);
+		String fullKey = owner + "." + name + " " + desc;
 		
-		if(fieldMappings.containsKey(fullKey)){
+		String cached = fieldMappings.get(fullKey);
+		if(cached != null){
 			//if(fullKey.equals("gm.ec J")){
 			//	System.out.println("BytecodeRefactorer.getMappedFieldName()");
 			//}
-			return fieldMappings.get(fullKey);
+			return cached;
 		}
 		
 		String newName = remapper.resolveFieldName(owner, name, desc, isStatic);
@@ -364,8 +380,7 @@ public class BytecodeRefactorer implements Opcodes {
 		if(newName == null)
 			newName = name;
 		
-		fieldMappings.put(fullKey, newName);
-		return newName;
+		return cache(fieldMappings, fullKey, newName);
 	}
 
 	public String getMappedMethodName(String owner, String name, String desc, boolean isStatic){
@@ -435,8 +450,9 @@ public class BytecodeRefactorer implements Opcodes {
 	public String getMappedMethodName(MethodNode m) {
 		/*step 1. check already mapped ones*/
 		String fullKey = m.cachedKey();
-		if(methodMappings.containsKey(fullKey))
-			return methodMappings.get(fullKey);
+		String cached = methodMappings.get(fullKey);
+		if(cached != null)
+			return cached;
 		
 		String newName = null;
 		
@@ -464,9 +480,10 @@ public class BytecodeRefactorer implements Opcodes {
 		
 		/*step 3. ask the remapper*/		
 		newName = remapper.resolveMethodName(m.owner.name, m.name, m.desc, Modifier.isStatic(m.access));
-		methodMappings.put(fullKey, newName);
+		if(newName == null)
+			newName = m.name;
 		
-		return newName;
+		return cache(methodMappings, fullKey, newName);
 	}
 
 	public Collection<ClassNode> getClasses() {
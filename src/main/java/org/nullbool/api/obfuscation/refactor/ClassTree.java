@@ -3,115 +3,221 @@ package org.nullbool.api.obfuscation.refactor;
 import static org.nullbool.api.obfuscation.refactor.ClassHelper.convertToMap;
 import static org.nullbool.api.obfuscation.refactor.ClassHelper.copyOf;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.nullbool.api.Context;
+import org.nullbool.api.util.ClassStructure;
 import org.nullbool.api.util.map.NullPermeableHashMap;
+import org.nullbool.api.util.map.ValueCreator;
 import org.objectweb.custom_asm.tree.ClassNode;
 import org.objectweb.custom_asm.tree.MethodNode;
 
 /**
+ * The supers and delegates of every class in the jar. A provider builds one
+ * of these at the start of a run and every pass that needs the hierarchy
+ * shares it (see {@link Context#getClassTree()}), so it's kept up to date
+ * instead of being built again. Adding a class only rebuilds the classes that
+ * extend or implement it (directly or not) and the names are refreshed with
+ * {@link #refreshNames()} after the classes have been renamed. <br>
+ *
+ * The supers of a class are kept in the order that they're found in: the
+ * superinterfaces first, then each superclass followed by its interfaces.
+ * The methods of the supers and delegates of a class are indexed by name and
+ * descriptor the first time they're looked up. Passes that rename, remove or
+ * change the descriptors of methods have to call {@link #invalidateMembers()}
+ * afterwards. <br>
+ *
+ * Classes that aren't in the jar (i.e. JDK classes that are only needed to
+ * resolve a type) can be added with {@link #addLibrary(ClassNode)}. They're
+ * part of the hierarchy but aren't in {@link #getClasses()}. <br>
+ *
+ * In the indexed mode (see {@link #setIndexed(boolean)}), every class is
+ * given a dense id and its supers and delegates are also kept as BitSets of
+ * ids. Methods are then looked up in one index of name and descriptor to the
+ * classes that declare them, so finding the methods of the supers of a class
+ * is a hash lookup and an intersection of two BitSets.
+ *
  * @author Bibl (don't ban me pls)
  * @created 25 May 2015 (actually before this)
  */
 public class ClassTree {
-	private static final SetCreator<ClassNode> SET_CREATOR = new SetCreator<ClassNode>();
+	private static final ValueCreator<Set<ClassNode>> SET_CREATOR = new ValueCreator<Set<ClassNode>>() {
+		@Override
+		public Set<ClassNode> create() {
+			return new LinkedHashSet<ClassNode>();
+		}
+	};
 
 	private final Map<String, ClassNode>                      classes;
+	private final Map<String, ClassNode>                      libraries;
 	private final NullPermeableHashMap<ClassNode, Set<ClassNode>> supers;
 	private final NullPermeableHashMap<ClassNode, Set<ClassNode>> delgates;
+	private final NullPermeableHashMap<String, Set<ClassNode>>    referrers;
+	private final Map<ClassNode, Set<ClassNode>>              superViews;
+	private final Map<ClassNode, Set<ClassNode>>              delegateViews;
+	private final Map<ClassNode, Map<String, List<MethodNode>>> superMethods;
+	private final Map<ClassNode, Map<String, List<MethodNode>>> delegateMethods;
+	private boolean                                            indexed;
+	private volatile Ids                                       ids;
+	private volatile Map<String, Declarers>                    declarers;
 
 	public ClassTree(Collection<ClassNode> classes) {
 		this(convertToMap(classes));
 	}
 
 	public ClassTree(Map<String, ClassNode> classes_) {
-		classes  = copyOf(classes_);
-		supers   = new NullPermeableHashMap<ClassNode, Set<ClassNode>>(SET_CREATOR);
-		delgates = new NullPermeableHashMap<ClassNode, Set<ClassNode>>(SET_CREATOR);
+		classes         = copyOf(classes_);
+		libraries       = new HashMap<String, ClassNode>();
+		supers          = new NullPermeableHashMap<ClassNode, Set<ClassNode>>(SET_CREATOR);
+		delgates        = new NullPermeableHashMap<ClassNode, Set<ClassNode>>(SET_CREATOR);
+		referrers       = new NullPermeableHashMap<String, Set<ClassNode>>(SET_CREATOR);
+		superViews      = new ConcurrentHashMap<ClassNode, Set<ClassNode>>();
+		delegateViews   = new ConcurrentHashMap<ClassNode, Set<ClassNode>>();
+		superMethods    = new ConcurrentHashMap<ClassNode, Map<String, List<MethodNode>>>();
+		delegateMethods = new ConcurrentHashMap<ClassNode, Map<String, List<MethodNode>>>();
 
 		build(classes);
 	}
 
-	// TODO: optimise
-	public void build(Map<String, ClassNode> classes) {
+	public synchronized void build(Map<String, ClassNode> classes) {
 		for (ClassNode node : classes.values()) {
-			for (String iface : node.interfaces) {
-				ClassNode ifacecs = classes.get(iface);
-				if (ifacecs == null)
-					continue;
+			build0(node);
+		}
+		invalidate();
+	}
 
-				getDelegates0(ifacecs).add(node);
+	/**
+	 * Adds a class of the jar to the tree. If classes that are already in the
+	 * tree extend or implement it, they're built again since they now have
+	 * more supers.
+	 */
+	public synchronized void build(ClassNode node) {
+		classes.put(node.name, node);
+		add(node);
+	}
 
-				Set<ClassNode> superinterfaces = new HashSet<ClassNode>();
-				buildSubTree(classes, superinterfaces, ifacecs);
+	/**
+	 * Adds a class that isn't in the jar but is needed to resolve the
+	 * hierarchy of the classes that are.
+	 */
+	public synchronized void addLibrary(ClassNode node) {
+		libraries.put(node.name, node);
+		add(node);
+	}
 
-				getSupers0(node).addAll(superinterfaces);
+	/* Adding a class can only give more supers to the classes that reach it
+	 * through their superclasses and interfaces, so only they're built again.
+	 * Their supers are cleared first and they're built in the same order as
+	 * the rest of the tree so that the supers are kept in the same order. */
+	private void add(ClassNode node) {
+		Set<ClassNode> affected = new HashSet<ClassNode>();
+		collectReferrers(node.name, affected);
+		build0(node);
+		if (!affected.isEmpty()) {
+			for (ClassNode cn : affected) {
+				getSupers0(cn).clear();
 			}
-			ClassNode currentSuper = classes.get(node.superName);
-			while (currentSuper != null) {
-				getDelegates0(currentSuper).add(node);
-				getSupers0(node).add(currentSuper);
-				for (String iface : currentSuper.interfaces) {
-					ClassNode ifacecs = classes.get(iface);
-					if (ifacecs == null)
-						continue;
-					getDelegates0(ifacecs).add(currentSuper);
-					Set<ClassNode> superinterfaces = new HashSet<ClassNode>();
-					buildSubTree(classes, superinterfaces, ifacecs);
-					getSupers0(currentSuper).addAll(superinterfaces);
-					getSupers0(node).addAll(superinterfaces);
-				}
-				currentSuper = classes.get(currentSuper.superName);
+			for (ClassNode cn : libraries.values()) {
+				if (affected.contains(cn))
+					build0(cn);
+			}
+			for (ClassNode cn : classes.values()) {
+				if (affected.contains(cn))
+					build0(cn);
 			}
+		}
+		invalidate();
+	}
+
+	private void collectReferrers(String name, Set<ClassNode> affected) {
+		Set<ClassNode> set = referrers.get(name);
+		if (set == null)
+			return;
+		for (ClassNode cn : set) {
+			if (affected.add(cn))
+				collectReferrers(cn.name, affected);
+		}
+	}
 
-			getSupers0(node);
-			getDelegates0(node);
+	/**
+	 * Updates the names of all of the classes after they have been renamed
+	 * (i.e. by a {@link BytecodeRefactorer}). The supers and delegates don't
+	 * change since they're kept by ClassNode.
+	 */
+	public synchronized void refreshNames() {
+		List<ClassNode> nodes = new ArrayList<ClassNode>(classes.values());
+		classes.clear();
+		referrers.clear();
+		for (ClassNode cn : nodes) {
+			classes.put(cn.name, cn);
+			refer(cn);
+		}
+		for (ClassNode cn : libraries.values()) {
+			refer(cn);
 		}
 	}
-	
-	public void build(ClassNode node) {
+
+	/* Keeps the classes by the names of their superclass and interfaces, so
+	 * that the classes which extend or implement a class that is added later
+	 * can be found without going through the whole tree. */
+	private void refer(ClassNode node) {
+		if (node.superName != null)
+			referrers.getNonNull(node.superName).add(node);
+		for (String iface : node.interfaces) {
+			referrers.getNonNull(iface).add(node);
+		}
+	}
+
+	private void build0(ClassNode node) {
+		refer(node);
 		for (String iface : node.interfaces) {
-			ClassNode ifacecs = classes.get(iface);
+			ClassNode ifacecs = getClass(iface);
 			if (ifacecs == null)
 				continue;
 
 			getDelegates0(ifacecs).add(node);
 
-			Set<ClassNode> superinterfaces = new HashSet<ClassNode>();
-			buildSubTree(classes, superinterfaces, ifacecs);
+			Set<ClassNode> superinterfaces = new LinkedHashSet<ClassNode>();
+			buildSubTree(superinterfaces, ifacecs);
 
 			getSupers0(node).addAll(superinterfaces);
 		}
-		ClassNode currentSuper = classes.get(node.superName);
+		ClassNode currentSuper = getClass(node.superName);
 		while (currentSuper != null) {
 			getDelegates0(currentSuper).add(node);
 			getSupers0(node).add(currentSuper);
 			for (String iface : currentSuper.interfaces) {
-				ClassNode ifacecs = classes.get(iface);
+				ClassNode ifacecs = getClass(iface);
 				if (ifacecs == null)
 					continue;
 				getDelegates0(ifacecs).add(currentSuper);
-				Set<ClassNode> superinterfaces = new HashSet<ClassNode>();
-				buildSubTree(classes, superinterfaces, ifacecs);
+				Set<ClassNode> superinterfaces = new LinkedHashSet<ClassNode>();
+				buildSubTree(superinterfaces, ifacecs);
 				getSupers0(currentSuper).addAll(superinterfaces);
 				getSupers0(node).addAll(superinterfaces);
 			}
-			currentSuper = classes.get(currentSuper.superName);
+			currentSuper = getClass(currentSuper.superName);
 		}
 
 		getSupers0(node);
 		getDelegates0(node);
-		
-		classes.put(node.name, node);
 	}
-	
+
 	public void output() {
-		if (classes.size() == delgates.size() && classes.size() == supers.size() && delgates.size() == supers.size()) {
+		int size = classes.size() + libraries.size();
+		if (size == delgates.size() && size == supers.size() && delgates.size() == supers.size()) {
 			if(Context.current().getFlags().getOrDefault("basicout", true)) 
 				System.out.println(String.format("Built tree for %d classes (%d del, %d sup).", classes.size(), delgates.size(), supers.size()));
 		} else {
@@ -120,67 +226,219 @@ public class ClassTree {
 		}
 	}
 
-	private void buildSubTree(Map<String, ClassNode> classes, Collection<ClassNode> superinterfaces, ClassNode current) {
+	private void buildSubTree(Collection<ClassNode> superinterfaces, ClassNode current) {
 		superinterfaces.add(current);
 		for (String iface : current.interfaces) {
-			ClassNode cs = classes.get(iface);
+			ClassNode cs = getClass(iface);
 			if(cs != null) {
 				getDelegates0(cs).add(current);
-				buildSubTree(classes, superinterfaces, cs);
+				buildSubTree(superinterfaces, cs);
 			} else {
 				//System.out.println("Null interface -> " + iface);
 			}
 		}
 	}
 
-	public Set<MethodNode> getMethodsFromSuper(MethodNode m) {
-		return getMethodsFromSuper(m.owner, m.name, m.desc);
+	private void invalidate() {
+		superViews.clear();
+		delegateViews.clear();
+		ids = null;
+		invalidateMembers();
 	}
 
-	public Set<MethodNode> getMethodsFromSuper(ClassNode node, String name, String desc) {
-		Set<MethodNode> methods = new HashSet<MethodNode>();
-		for (ClassNode super_ : getSupers(node)) {
-			for (MethodNode mn : super_.methods) {
-				if (mn.name.equals(name) && mn.desc.equals(desc)) {
-					methods.add(mn);
+	/**
+	 * Drops the method indexes, along with the member indexes of the
+	 * {@link ClassStructure}s in the tree. Has to be called after the members
+	 * of the classes have been renamed, removed or given a different
+	 * descriptor.
+	 */
+	public void invalidateMembers() {
+		superMethods.clear();
+		delegateMethods.clear();
+		declarers = null;
+		invalidateMembers(classes.values());
+		invalidateMembers(libraries.values());
+	}
+
+	private static void invalidateMembers(Collection<ClassNode> classes) {
+		for (ClassNode cn : classes) {
+			if (cn instanceof ClassStructure)
+				((ClassStructure) cn).invalidateMembers();
+		}
+	}
+
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Switches the method lookups between a per class index of the methods
+	 * of its supers and delegates (the default) and the BitSet index.
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+
+	private Ids ids() {
+		Ids ids = this.ids;
+		if (ids == null) {
+			synchronized (this) {
+				ids = this.ids;
+				if (ids == null)
+					this.ids = ids = new Ids();
+			}
+		}
+		return ids;
+	}
+
+	private Map<String, Declarers> declarers() {
+		Map<String, Declarers> declarers = this.declarers;
+		if (declarers == null) {
+			synchronized (this) {
+				declarers = this.declarers;
+				if (declarers == null) {
+					Ids ids = ids();
+					declarers = new HashMap<String, Declarers>();
+					for (int id = 0; id < ids.nodes.length; id++) {
+						for (MethodNode mn : ids.nodes[id].methods) {
+							String key = mn.name + mn.desc;
+							Declarers d = declarers.get(key);
+							if (d == null) {
+								d = new Declarers();
+								declarers.put(key, d);
+							}
+							d.add(id, mn);
+						}
+					}
+					this.declarers = declarers;
 				}
 			}
 		}
-		return methods;
+		return declarers;
 	}
 
-	public Set<MethodNode> getMethodsFromDelegates(MethodNode m) {
-		return getMethodsFromDelegates(m.owner, m.name, m.desc);
+	/**
+	 * @return The id of the class in the indexed mode or -1 if it isn't in the tree.
+	 */
+	public int getId(ClassNode cn) {
+		Integer id = ids().ids.get(cn);
+		return id != null ? id : -1;
 	}
 
-	public Set<MethodNode> getMethodsFromDelegates(ClassNode node, String name, String desc) {
-		Set<MethodNode> methods = new HashSet<MethodNode>();
-		for (ClassNode delegate : getDelegates(node)) {
-			for (MethodNode mn : delegate.methods) {
-				if (mn.name.equals(name) && mn.desc.equals(desc)) {
-					methods.add(mn);
+	public ClassNode getClass(int id) {
+		return ids().nodes[id];
+	}
+
+	/**
+	 * @return The ids of the supers of the class. The BitSet must not be modified.
+	 */
+	public BitSet getSuperIds(ClassNode cn) {
+		Ids ids = ids();
+		return ids.supers[ids.ids.get(cn)];
+	}
+
+	/**
+	 * @return The ids of the delegates of the class. The BitSet must not be modified.
+	 */
+	public BitSet getDelegateIds(ClassNode cn) {
+		Ids ids = ids();
+		return ids.delegates[ids.ids.get(cn)];
+	}
+
+	/**
+	 * @return True if sup is one of the supers of cn.
+	 */
+	public boolean isSuper(ClassNode sup, ClassNode cn) {
+		Ids ids = ids();
+		Integer a = ids.ids.get(sup), b = ids.ids.get(cn);
+		return a != null && b != null && ids.supers[b].get(a);
+	}
+
+	/* The methods with the key that are declared by one of the given classes, in
+	 * the order of the ids of the classes. */
+	private List<MethodNode> lookup(BitSet related, String name, String desc) {
+		Declarers d = declarers().get(name + desc);
+		if (d == null || !d.classes.intersects(related))
+			return Collections.<MethodNode> emptyList();
+		List<MethodNode> list = new ArrayList<MethodNode>(1);
+		for (int i = 0; i < d.size; i++) {
+			if (related.get(d.ids[i]))
+				list.add(d.methods[i]);
+		}
+		return list;
+	}
+
+	/* Indexes the methods of the given supers or delegates of a class by name
+	 * and descriptor, keeping them in the order of the classes and then the
+	 * order of the methods in each class. */
+	private static List<MethodNode> lookup(Map<ClassNode, Map<String, List<MethodNode>>> indexes, ClassNode node, Set<ClassNode> related, String name, String desc) {
+		Map<String, List<MethodNode>> index = indexes.get(node);
+		if (index == null) {
+			index = new HashMap<String, List<MethodNode>>();
+			for (ClassNode cn : related) {
+				for (MethodNode mn : cn.methods) {
+					String key = mn.name + mn.desc;
+					List<MethodNode> list = index.get(key);
+					if (list == null) {
+						list = new ArrayList<MethodNode>(1);
+						index.put(key, list);
+					}
+					list.add(mn);
 				}
 			}
+			indexes.put(node, index);
 		}
-		return methods;
+		List<MethodNode> list = index.get(name + desc);
+		return list != null ? list : Collections.<MethodNode> emptyList();
+	}
+
+	public Set<MethodNode> getMethodsFromSuper(MethodNode m) {
+		return getMethodsFromSuper(m.owner, m.name, m.desc);
+	}
+
+	public Set<MethodNode> getMethodsFromSuper(ClassNode node, String name, String desc) {
+		if (indexed && getId(node) != -1)
+			return new HashSet<MethodNode>(lookup(getSuperIds(node), name, desc));
+		return new HashSet<MethodNode>(lookup(superMethods, node, getSupers(node), name, desc));
+	}
+
+	public Set<MethodNode> getMethodsFromDelegates(MethodNode m) {
+		return getMethodsFromDelegates(m.owner, m.name, m.desc);
+	}
+
+	public Set<MethodNode> getMethodsFromDelegates(ClassNode node, String name, String desc) {
+		if (indexed && getId(node) != -1)
+			return new HashSet<MethodNode>(lookup(getDelegateIds(node), name, desc));
+		return new HashSet<MethodNode>(lookup(delegateMethods, node, getDelegates(node), name, desc));
 	}
 
 	public MethodNode getFirstMethodFromSuper(ClassNode node, String name, String desc) {
-		for (ClassNode super_ : getSupers(node)) {
-			for (MethodNode mn : super_.methods) {
-				if (mn.name.equals(name) && mn.desc.equals(desc)) {
-					return mn;
+		if (indexed && getId(node) != -1) {
+			List<MethodNode> methods = lookup(getSuperIds(node), name, desc);
+			if (methods.size() < 2)
+				return methods.isEmpty() ? null : methods.get(0);
+			/* The first in the order of the supers rather than of the ids. */
+			for (ClassNode sup : getSupers(node)) {
+				for (MethodNode mn : methods) {
+					if (mn.owner == sup)
+						return mn;
 				}
 			}
 		}
-		return null;
+		List<MethodNode> methods = lookup(superMethods, node, getSupers(node), name, desc);
+		return methods.isEmpty() ? null : methods.get(0);
 	}
 
 	public ClassNode getClass(String name) {
-		return classes.get(name);
+		ClassNode cn = classes.get(name);
+		return cn != null ? cn : libraries.get(name);
 	}
 
 	public boolean isInherited(ClassNode cn, String name, String desc) {
+		if (indexed && getId(cn) != -1) {
+			Declarers d = declarers().get(name + desc);
+			return d != null && d.classes.intersects(getSuperIds(cn));
+		}
 		return getFirstMethodFromSuper(cn, name, desc) != null;
 	}
 
@@ -196,17 +454,81 @@ public class ClassTree {
 		return delgates.getNonNull(cn);
 	}
 
+	/**
+	 * @return The classes of the jar (without the library classes).
+	 */
 	public Map<String, ClassNode> getClasses() {
 		return classes;
 	}
 
 	public Set<ClassNode> getSupers(ClassNode cn) {
-		return Collections.unmodifiableSet(supers.get(cn));
-		// return supers.get(cn);
+		return view(superViews, supers, cn);
 	}
 
 	public Set<ClassNode> getDelegates(ClassNode cn) {
-		return Collections.unmodifiableSet(delgates.get(cn));
-		// return delgates.get(cn);
+		return view(delegateViews, delgates, cn);
+	}
+
+	private static Set<ClassNode> view(Map<ClassNode, Set<ClassNode>> views, Map<ClassNode, Set<ClassNode>> sets, ClassNode cn) {
+		Set<ClassNode> view = views.get(cn);
+		if (view == null) {
+			view = Collections.unmodifiableSet(sets.get(cn));
+			views.put(cn, view);
+		}
+		return view;
+	}
+
+	/* The dense ids of the classes (including the libraries) and their supers
+	 * and delegates as BitSets. */
+	private class Ids {
+		private final ClassNode[] nodes;
+		private final Map<ClassNode, Integer> ids;
+		private final BitSet[] supers;
+		private final BitSet[] delegates;
+
+		Ids() {
+			nodes = ClassTree.this.supers.keySet().toArray(new ClassNode[0]);
+			ids = new IdentityHashMap<ClassNode, Integer>();
+			for (int id = 0; id < nodes.length; id++) {
+				ids.put(nodes[id], id);
+			}
+			supers = bits(ClassTree.this.supers);
+			delegates = bits(delgates);
+		}
+
+		private BitSet[] bits(Map<ClassNode, Set<ClassNode>> sets) {
+			BitSet[] bits = new BitSet[nodes.length];
+			for (int id = 0; id < nodes.length; id++) {
+				BitSet set = new BitSet(nodes.length);
+				Set<ClassNode> related = sets.get(nodes[id]);
+				if (related != null) {
+					for (ClassNode cn : related) {
+						Integer other = ids.get(cn);
+						if (other != null)
+							set.set(other);
+					}
+				}
+				bits[id] = set;
+			}
+			return bits;
+		}
+	}
+
+	/* The classes that declare a method with a given name and descriptor. */
+	private static class Declarers {
+		private final BitSet classes = new BitSet();
+		private int[] ids = new int[1];
+		private MethodNode[] methods = new MethodNode[1];
+		private int size;
+
+		void add(int id, MethodNode mn) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				methods = Arrays.copyOf(methods, size * 2);
+			}
+			classes.set(id);
+			ids[size] = id;
+			methods[size++] = mn;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -3,11 +3,14 @@ package org.nullbool.api.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.nullbool.api.obfuscation.DirectedGraph;
+import org.nullbool.api.obfuscation.refactor.ClassTree;
 import org.objectweb.custom_asm.ClassReader;
 import org.objectweb.custom_asm.ClassWriter;
 import org.objectweb.custom_asm.Opcodes;
@@ -16,14 +19,22 @@ import org.objectweb.custom_asm.tree.FieldNode;
 import org.objectweb.custom_asm.tree.MethodNode;
 import org.topdank.banalysis.filter.Filter;
 
+/**
+ * A {@link ClassNode} with a few lookups on top. It only holds onto the
+ * {@link ClassTree} that it's part of, which keeps its supers and delegates,
+ * and a {@link ClassWriter} is only made when the bytes are asked for. <br>
+ *
+ * The methods and fields are indexed by name and descriptor the first time
+ * that one is looked up. The index is built again when a member is added or
+ * removed, but passes that rename members or change their descriptors have
+ * to call {@link #invalidateMembers()} (which
+ * {@link ClassTree#invalidateMembers()} does for every class in the tree).
+ */
 public class ClassStructure extends ClassNode {
 
-	public final List<ClassStructure> supers = new ArrayList<>();
-	public final List<ClassStructure> delegates = new ArrayList<>();
-	public final DirectedGraph<MethodNode, MethodNode> callGraph = new DirectedGraph<>();
-
-	private final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+	private ClassTree hierarchy;
 	private byte[] bytes;
+	private volatile Members members;
 	
 	public ClassStructure(){
 		super(Opcodes.ASM5);
@@ -65,6 +76,7 @@ public class ClassStructure extends ClassNode {
 	public byte[] getBytes(final boolean cached) {
 		if (cached && bytes != null)
 			return bytes;
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
 		accept(writer);
 		return (bytes = writer.toByteArray());
 	}
@@ -81,8 +93,38 @@ public class ClassStructure extends ClassNode {
 		 * sb.append(", ").append(iface); } return sb.toString(); */
 	}
 
+	/**
+	 * @param hierarchy The tree that holds the supers and delegates of this class.
+	 */
+	public void setHierarchy(ClassTree hierarchy) {
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * @return The supertypes and superinterfaces of this class, or nothing if
+	 *         it isn't part of a hierarchy yet.
+	 */
+	public Set<ClassNode> getSupers() {
+		return hierarchy != null ? hierarchy.getSupers(this) : Collections.<ClassNode>emptySet();
+	}
+
+	/**
+	 * @return The classes that extend or implement this class, or nothing if
+	 *         it isn't part of a hierarchy yet.
+	 */
+	public Set<ClassNode> getDelegates() {
+		return hierarchy != null ? hierarchy.getDelegates(this) : Collections.<ClassNode>emptySet();
+	}
+
 	public MethodNode getMethodFromSuper(final String name, final String desc) {
-		for (final ClassStructure super_ : supers) {
+		String key = name + desc;
+		for (final ClassNode super_ : getSupers()) {
+			if (super_ instanceof ClassStructure) {
+				MethodNode mn = ((ClassStructure) super_).members().methods.get(key);
+				if (mn != null)
+					return mn;
+				continue;
+			}
 			for (final MethodNode mn : super_.methods) {
 				if (mn.name.equals(name) && mn.desc.equals(desc)) {
 					return mn;
@@ -102,12 +144,29 @@ public class ClassStructure extends ClassNode {
 
 	@Override
 	public MethodNode getMethod(final String name, final String desc) {
-		for (final MethodNode mn : methods) {
-			if (mn.key().equals(this.name + "." + name + desc)) {
-				return mn;
-			}
-		}
-		return null;
+		return members().methods.get(name + desc);
+	}
+
+	/**
+	 * @return The field of this class with the name and descriptor (static or
+	 *         not), or null if there isn't one.
+	 */
+	public FieldNode getDeclaredField(final String name, final String desc) {
+		return members().fields.get(name + desc);
+	}
+
+	/**
+	 * Drops the index of the methods and fields of this class.
+	 */
+	public void invalidateMembers() {
+		members = null;
+	}
+
+	private Members members() {
+		Members m = members;
+		if (m == null || m.methodCount != methods.size() || m.fieldCount != fields.size())
+			members = m = new Members(this);
+		return m;
 	}
 
 	public List<MethodNode> getMethods(Filter<MethodNode> filter) {
@@ -123,10 +182,38 @@ public class ClassStructure extends ClassNode {
 	}
 
 	public int getLevel() {
-		return supers.size();
+		return getSupers().size();
 	}
 
+	/**
+	 * @return The direct superclass or null if it isn't in the tree or isn't
+	 *         a ClassStructure (i.e. a library class).
+	 */
 	public ClassStructure getSuperType() {
-		return supers.size() > 0 ? supers.get(0) : null; // direct superclass is always added first
+		ClassNode sup = hierarchy != null && superName != null ? hierarchy.getClass(superName) : null;
+		return sup instanceof ClassStructure ? (ClassStructure) sup : null;
+	}
+
+	/* The members by name + descriptor, keeping the first of any duplicates
+	 * like a scan would. It isn't changed once built, so it can be shared
+	 * between threads. */
+	private static final class Members {
+		final int methodCount;
+		final int fieldCount;
+		final Map<String, MethodNode> methods;
+		final Map<String, FieldNode> fields;
+
+		Members(ClassStructure cs) {
+			methodCount = cs.methods.size();
+			fieldCount = cs.fields.size();
+			methods = new HashMap<String, MethodNode>(methodCount * 2);
+			for (MethodNode mn : cs.methods) {
+				methods.putIfAbsent(mn.name + mn.desc, mn);
+			}
+			fields = new HashMap<String, FieldNode>(fieldCount * 2);
+			for (FieldNode fn : cs.fields) {
+				fields.putIfAbsent(fn.name + fn.desc, fn);
+			}
+		}
 	}
 }
\ No newline at end of file
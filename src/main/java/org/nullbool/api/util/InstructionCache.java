@@ -0,0 +1,87 @@
+package org.nullbool.api.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.objectweb.custom_asm.tree.InsnList;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * Caches the {@link InstructionIndex} of each method so that every analyser
+ * searching the same method shares one index. The operands of all of the
+ * indexes are interned in one pool. <br>
+ * An index is only reused while the method still has the same {@link InsnList}
+ * and the list has not been modified since the index was built.
+ */
+public class InstructionCache {
+
+	private final Map<MethodNode, Entry> cache = new ConcurrentHashMap<MethodNode, Entry>();
+	private final Map<String, String> pool = new ConcurrentHashMap<String, String>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Gets the cached index of the method or builds (and caches) a new one if
+	 * there isn't a valid one.
+	 */
+	public InstructionIndex get(MethodNode m) {
+		InsnList insns = m.instructions;
+		Entry e = cache.get(m);
+		if (e != null && e.insns == insns && e.modCount == insns.getModCount()) {
+			hits.incrementAndGet();
+			return e.index;
+		}
+		misses.incrementAndGet();
+		int modCount = insns.getModCount();
+		InstructionIndex index = new InstructionIndex(insns.toArray(), pool);
+		cache.put(m, new Entry(index, insns, modCount));
+		return index;
+	}
+
+	/**
+	 * Removes the index of a method whose instructions may have been changed
+	 * without going through its InsnList.
+	 */
+	public void invalidate(MethodNode m) {
+		cache.remove(m);
+	}
+
+	public void clear() {
+		cache.clear();
+		pool.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	public void output() {
+		System.err.printf("Instruction cache: %d hits, %d misses (%.2f%% hit rate), %d operands.%n", hits.get(), misses.get(), getHitRate() * 100, pool.size());
+	}
+
+	private static class Entry {
+		private final InstructionIndex index;
+		private final InsnList insns;
+		private final int modCount;
+
+		public Entry(InstructionIndex index, InsnList insns, int modCount) {
+			this.index = index;
+			this.insns = insns;
+			this.modCount = modCount;
+		}
+	}
+}
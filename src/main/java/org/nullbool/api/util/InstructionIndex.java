@@ -0,0 +1,197 @@
+package org.nullbool.api.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.custom_asm.tree.AbstractInsnNode;
+import org.objectweb.custom_asm.tree.FieldInsnNode;
+import org.objectweb.custom_asm.tree.IntInsnNode;
+import org.objectweb.custom_asm.tree.LdcInsnNode;
+import org.objectweb.custom_asm.tree.MethodInsnNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+import org.objectweb.custom_asm.tree.TypeInsnNode;
+import org.objectweb.custom_asm.tree.VarInsnNode;
+import org.objectweb.custom_asm.util.Printer;
+
+/**
+ * The real instructions (labels, frames and line numbers are skipped) of a
+ * method held in arrays, so that they can be searched by index and opcode
+ * without going through a linked list or building a string per instruction. <br>
+ *
+ * The text of an instruction is only built when it's asked for, in one of the
+ * {@link Style}s that the old identifiers used. The operands are interned
+ * through the pool that the index was made with, so that an index that is kept
+ * around (see {@link InstructionCache}) shares them with every other method.
+ */
+public class InstructionIndex {
+
+	/**
+	 * The lower case names of every opcode.
+	 */
+	public static final String[] NAMES = new String[256];
+
+	static {
+		for (int i = 0; i < Printer.OPCODES.length; i++) {
+			NAMES[i] = Printer.OPCODES[i].toLowerCase();
+		}
+	}
+
+	/**
+	 * How an instruction is written out.
+	 */
+	public enum Style {
+		/** "name operand" for field, method, var, ldc, int and type instructions (see {@link InstructionIdentifier#getInstList()}). */
+		FULL,
+		/** The same as FULL except that type instructions have no operand (see {@link BoundedInstructionIdentifier.ExplicitDataPoint}). */
+		BOUNDED,
+		/** Only the name of the opcode (see {@link InstructionIdentifier#getInstCleanList()}). */
+		CLEAN;
+	}
+
+	private static final byte NO_OPERAND = 0;
+	private static final byte TYPE_OPERAND = 1;
+	private static final byte OPERAND = 2;
+
+	private final Map<String, String> pool;
+	private final AbstractInsnNode[] insns;
+	private final int[] opcodes;
+	private final byte[] kinds;
+	private final String[] operands;
+	private final String[] full;
+
+	public InstructionIndex(MethodNode m) {
+		this(m.instructions.toArray());
+	}
+
+	public InstructionIndex(AbstractInsnNode[] ains) {
+		this(ains, null);
+	}
+
+	/**
+	 * @param pool The pool to intern the operands with or null to not intern them.
+	 */
+	public InstructionIndex(AbstractInsnNode[] ains, Map<String, String> pool) {
+		this.pool = pool;
+		int size = 0;
+		for (AbstractInsnNode ain : ains) {
+			if (ain.getOpcode() != -1)
+				size++;
+		}
+
+		insns = new AbstractInsnNode[size];
+		opcodes = new int[size];
+		kinds = new byte[size];
+		operands = new String[size];
+		full = new String[size];
+		int i = 0;
+		for (AbstractInsnNode ain : ains) {
+			if (ain.getOpcode() == -1)
+				continue;
+			insns[i] = ain;
+			opcodes[i] = ain.getOpcode();
+			if (ain instanceof TypeInsnNode) {
+				kinds[i] = TYPE_OPERAND;
+			} else if (ain instanceof FieldInsnNode || ain instanceof MethodInsnNode || ain instanceof VarInsnNode || ain instanceof LdcInsnNode
+					|| ain instanceof IntInsnNode) {
+				kinds[i] = OPERAND;
+			}
+			i++;
+		}
+	}
+
+	public int size() {
+		return insns.length;
+	}
+
+	public AbstractInsnNode insn(int i) {
+		return insns[i];
+	}
+
+	public int opcode(int i) {
+		return opcodes[i];
+	}
+
+	/**
+	 * @return True if the instruction is written as just its opcode name in the given style.
+	 */
+	public boolean isBare(int i, Style style) {
+		byte op = kinds[i];
+		return op == NO_OPERAND || style == Style.CLEAN || (op == TYPE_OPERAND && style == Style.BOUNDED);
+	}
+
+	public String text(int i, Style style) {
+		if (isBare(i, style))
+			return NAMES[opcodes[i]];
+
+		String s = full(i);
+		/* The bounded style leaves out the space if there is no operand. */
+		if (style == Style.BOUNDED && s.length() == NAMES[opcodes[i]].length() + 1)
+			return NAMES[opcodes[i]];
+		return s;
+	}
+
+	/**
+	 * @return The operand of the instruction as it's written in the full style,
+	 *         or an empty String if it doesn't have one.
+	 */
+	public String operand(int i) {
+		String s = operands[i];
+		if (s == null) {
+			s = operand(insns[i]);
+			if (pool != null) {
+				String interned = pool.putIfAbsent(s, s);
+				if (interned != null)
+					s = interned;
+			}
+			operands[i] = s;
+		}
+		return s;
+	}
+
+	/* The arrays are only ever filled with the same values, so threads that
+	 * share an index can race on them safely. */
+	private String full(int i) {
+		String s = full[i];
+		if (s == null) {
+			s = NAMES[opcodes[i]] + " " + operand(i);
+			full[i] = s;
+		}
+		return s;
+	}
+
+	private static String operand(AbstractInsnNode ain) {
+		if (ain instanceof FieldInsnNode) {
+			FieldInsnNode f = (FieldInsnNode) ain;
+			return f.owner + "." + f.name + " " + f.desc;
+		} else if (ain instanceof MethodInsnNode) {
+			MethodInsnNode m = (MethodInsnNode) ain;
+			return m.owner + "." + m.name + " " + m.desc;
+		} else if (ain instanceof VarInsnNode) {
+			return String.valueOf(((VarInsnNode) ain).var);
+		} else if (ain instanceof LdcInsnNode) {
+			return String.valueOf(((LdcInsnNode) ain).cst);
+		} else if (ain instanceof IntInsnNode) {
+			return String.valueOf(((IntInsnNode) ain).operand);
+		} else if (ain instanceof TypeInsnNode) {
+			return String.valueOf(((TypeInsnNode) ain).desc);
+		}
+		return "";
+	}
+
+	public List<String> getInstList() {
+		return texts(Style.FULL);
+	}
+
+	public List<String> getInstCleanList() {
+		return texts(Style.CLEAN);
+	}
+
+	private List<String> texts(Style style) {
+		List<String> list = new ArrayList<String>(insns.length);
+		for (int i = 0; i < insns.length; i++) {
+			list.add(text(i, style));
+		}
+		return list;
+	}
+}
@@ -1,16 +1,53 @@
 package org.nullbool.api.util;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.objectweb.custom_asm.tree.ClassNode;
 
+/**
+ * Parses the classes of a jar into {@link ClassStructure}s. <br>
+ *
+ * Given a File, the jar is memory mapped and its central directory is read
+ * in one pass, after which the classes are inflated and parsed in parallel
+ * on a ForkJoinPool. They're then put into the table in the order of the
+ * central directory (the order that {@link JarFile#entries()} gives), so the
+ * table is the same as the one that's built one class at a time from a
+ * JarFile. Jars that can't be read like this (zip64, encrypted or
+ * compressed with something other than deflate) are read through a JarFile,
+ * which is closed afterwards. The time that each phase took is kept and can
+ * be printed with {@link #output()}.
+ */
 public class JarParser {
 
+	private static final int EOCD = 0x06054b50;
+	private static final int CEN = 0x02014b50;
+	private static final int LOC = 0x04034b50;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
 	private final Map<String, ClassNode> classes;
+	private long readTime, decodeTime, indexTime;
+	private final AtomicLong inflateTime = new AtomicLong(), parseTime = new AtomicLong();
+	private boolean fallback;
 
 	public JarParser(JarFile j) throws IOException {
 		classes = new NodeTable<ClassNode>();
@@ -31,10 +68,254 @@ public class JarParser {
 		}
 	}
 
+	public JarParser(File file) throws IOException {
+		this(file, Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 * @param file The jar.
+	 * @param pool The pool that the classes are parsed on or null to parse them on the current thread.
+	 */
+	public JarParser(File file, ForkJoinPool pool) throws IOException {
+		classes = new NodeTable<ClassNode>();
+
+		long start = System.nanoTime();
+		List<Entry> entries;
+		ByteBuffer buf;
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			/* The mapping stays valid after the channel is closed. */
+			buf = fc.map(MapMode.READ_ONLY, 0, fc.size()).order(ByteOrder.LITTLE_ENDIAN);
+			entries = readCentralDirectory(buf);
+		}
+		readTime = System.nanoTime() - start;
+
+		if (entries == null) {
+			fallback = true;
+			start = System.nanoTime();
+			try (JarFile jar = new JarFile(file)) {
+				Map<String, ClassNode> parsed = new JarParser(jar).classes;
+				classes.putAll(parsed);
+			}
+			decodeTime = System.nanoTime() - start;
+			return;
+		}
+
+		start = System.nanoTime();
+		ClassNode[] nodes = new ClassNode[entries.size()];
+		Decode task = new Decode(buf, entries, nodes, 0, nodes.length);
+		if (pool != null)
+			pool.invoke(task);
+		else
+			task.decode();
+		decodeTime = System.nanoTime() - start;
+		if (task.error != null)
+			throw task.error;
+
+		start = System.nanoTime();
+		for (ClassNode cn : nodes) {
+			classes.put(cn.name, cn);
+		}
+		indexTime = System.nanoTime() - start;
+	}
+
+	/* The class entries in the order of the central directory or null if the
+	 * jar uses something that isn't read here or if an offset or length points
+	 * outside of where it should be, so that a broken jar is left to JarFile. */
+	private static List<Entry> readCentralDirectory(ByteBuffer buf) {
+		int end = -1;
+		for (int i = buf.limit() - 22; i >= Math.max(0, buf.limit() - 22 - 0xFFFF); i--) {
+			if (buf.getInt(i) == EOCD) {
+				end = i;
+				break;
+			}
+		}
+		if (end == -1)
+			return null;
+
+		int total = buf.getShort(end + 10) & 0xFFFF;
+		long offset = buf.getInt(end + 16) & 0xFFFFFFFFL;
+		if (total == 0xFFFF || offset == 0xFFFFFFFFL || offset > end)
+			return null;
+
+		List<Entry> entries = new ArrayList<Entry>(total);
+		int pos = (int) offset;
+		for (int i = 0; i < total; i++) {
+			if (pos + 46 > end || buf.getInt(pos) != CEN)
+				return null;
+			int flags = buf.getShort(pos + 8) & 0xFFFF;
+			int method = buf.getShort(pos + 10) & 0xFFFF;
+			long csize = buf.getInt(pos + 20) & 0xFFFFFFFFL;
+			long size = buf.getInt(pos + 24) & 0xFFFFFFFFL;
+			int nameLength = buf.getShort(pos + 28) & 0xFFFF;
+			int extraLength = buf.getShort(pos + 30) & 0xFFFF;
+			int commentLength = buf.getShort(pos + 32) & 0xFFFF;
+			long local = buf.getInt(pos + 42) & 0xFFFFFFFFL;
+			if (pos + 46 + nameLength + extraLength + commentLength > end)
+				return null;
+
+			byte[] name = new byte[nameLength];
+			ByteBuffer dup = buf.duplicate();
+			((Buffer) dup).position(pos + 46);
+			dup.get(name);
+			String entryName = new String(name, StandardCharsets.UTF_8);
+			pos += 46 + nameLength + extraLength + commentLength;
+
+			if (!entryName.endsWith(".class"))
+				continue;
+			if ((flags & 1) != 0 || (method != STORED && method != DEFLATED) || csize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || local == 0xFFFFFFFFL)
+				return null;
+			/* The data of every entry comes before the central directory. */
+			if (local + 30 > offset || size > Integer.MAX_VALUE || buf.getInt((int) local) != LOC)
+				return null;
+
+			int data = (int) local + 30 + (buf.getShort((int) local + 26) & 0xFFFF) + (buf.getShort((int) local + 28) & 0xFFFF);
+			if (data + csize > offset)
+				return null;
+			entries.add(new Entry(entryName, method, data, (int) csize, (int) size));
+		}
+		return entries;
+	}
+
 	/**
 	 * Return a table of parsed classes
 	 */
 	public Map<String, ClassNode> getParsedClasses() {
 		return classes;
 	}
+
+	/**
+	 * @return The time (in nanoseconds) that it took to map the jar and read its central directory.
+	 */
+	public long getReadTime() {
+		return readTime;
+	}
+
+	/**
+	 * @return The time (in nanoseconds) that it took to inflate and parse the classes.
+	 */
+	public long getDecodeTime() {
+		return decodeTime;
+	}
+
+	/**
+	 * @return The time (in nanoseconds) that was spent inflating, added up over the threads.
+	 */
+	public long getInflateTime() {
+		return inflateTime.get();
+	}
+
+	/**
+	 * @return The time (in nanoseconds) that was spent parsing, added up over the threads.
+	 */
+	public long getParseTime() {
+		return parseTime.get();
+	}
+
+	/**
+	 * @return The time (in nanoseconds) that it took to put the classes into the table.
+	 */
+	public long getIndexTime() {
+		return indexTime;
+	}
+
+	public void output() {
+		if (fallback) {
+			System.out.println(String.format("Loaded %d classes through a JarFile in %dms (read %dms).", classes.size(), decodeTime / 1000000, readTime / 1000000));
+		} else {
+			System.out.println(String.format("Loaded %d classes in %dms (read %dms, decode %dms [inflate %dms, parse %dms on all threads], index %dms).", classes.size(),
+					(readTime + decodeTime + indexTime) / 1000000, readTime / 1000000, decodeTime / 1000000, inflateTime.get() / 1000000, parseTime.get() / 1000000,
+					indexTime / 1000000));
+		}
+	}
+
+	private static class Entry {
+		private final String name;
+		private final int method, data, csize, size;
+
+		Entry(String name, int method, int data, int csize, int size) {
+			this.name = name;
+			this.method = method;
+			this.data = data;
+			this.csize = csize;
+			this.size = size;
+		}
+	}
+
+	private class Decode extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+
+		private final ByteBuffer buf;
+		private final List<Entry> entries;
+		private final ClassNode[] nodes;
+		private final int start, end;
+		private IOException error;
+
+		Decode(ByteBuffer buf, List<Entry> entries, ClassNode[] nodes, int start, int end) {
+			this.buf = buf;
+			this.entries = entries;
+			this.nodes = nodes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= THRESHOLD) {
+				decode();
+			} else {
+				int mid = (start + end) >>> 1;
+				Decode left = new Decode(buf, entries, nodes, start, mid);
+				Decode right = new Decode(buf, entries, nodes, mid, end);
+				invokeAll(left, right);
+				error = left.error != null ? left.error : right.error;
+			}
+		}
+
+		void decode() {
+			Inflater inflater = new Inflater(true);
+			try {
+				for (int i = start; i < end; i++) {
+					Entry e = entries.get(i);
+					long time = System.nanoTime();
+					byte[] bytes = inflate(inflater, e);
+					long inflated = System.nanoTime();
+					inflateTime.addAndGet(inflated - time);
+					nodes[i] = ClassStructure.create(bytes);
+					parseTime.addAndGet(System.nanoTime() - inflated);
+				}
+			} catch (IOException | RuntimeException e) {
+				error = e instanceof IOException ? (IOException) e : new IOException(e);
+			} finally {
+				inflater.end();
+			}
+		}
+
+		private byte[] inflate(Inflater inflater, Entry e) throws IOException {
+			byte[] in = new byte[e.csize];
+			ByteBuffer dup = buf.duplicate();
+			((Buffer) dup).position(e.data);
+			dup.get(in);
+			if (e.method == STORED)
+				return in;
+
+			byte[] out = new byte[e.size];
+			inflater.reset();
+			inflater.setInput(in);
+			try {
+				int n = 0;
+				while (n < out.length) {
+					int read = inflater.inflate(out, n, out.length - n);
+					if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+						break;
+					n += read;
+				}
+				if (n != out.length)
+					throw new IOException(String.format("%s inflated to %d bytes instead of %d.", e.name, n, out.length));
+			} catch (DataFormatException ex) {
+				throw new IOException(String.format("Couldn't inflate %s.", e.name), ex);
+			}
+			return out;
+		}
+	}
 }
\ No newline at end of file
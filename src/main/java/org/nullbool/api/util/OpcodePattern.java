@@ -0,0 +1,147 @@
+package org.nullbool.api.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.nullbool.api.util.InstructionIndex.Style;
+
+/**
+ * A sequence of instruction patterns, written in the same way that the
+ * analysers have always written them (e.g. "getstatic .*", "bipush 104", "dup"),
+ * compiled once so that it can be tested against an {@link InstructionIndex}. <br>
+ *
+ * Every element is turned into a table of the opcodes that it can possibly
+ * match. Instructions that are written as just their opcode name are then
+ * decided by the table alone and only the instructions that have an operand
+ * and can still match are tested against the regex. Compiled elements are
+ * shared between all patterns.
+ */
+public class OpcodePattern {
+
+	private static final Map<String, RegexElement> REGEX_ELEMENTS = new ConcurrentHashMap<String, RegexElement>();
+	private static final Map<String, ExactElement> EXACT_ELEMENTS = new ConcurrentHashMap<String, ExactElement>();
+
+	private final Element[] elements;
+	private final Style style;
+
+	private OpcodePattern(Element[] elements, Style style) {
+		this.elements = elements;
+		this.style = style;
+	}
+
+	/**
+	 * Compiles a pattern where each element is a regex that has to match the
+	 * whole text of an instruction, as in {@link String#matches(String)}.
+	 */
+	public static OpcodePattern compile(Style style, String... pattern) {
+		Element[] elements = new Element[pattern.length];
+		for (int i = 0; i < pattern.length; i++) {
+			elements[i] = REGEX_ELEMENTS.computeIfAbsent(pattern[i], RegexElement::new);
+		}
+		return new OpcodePattern(elements, style);
+	}
+
+	/**
+	 * Compiles a pattern where each element has to be equal to the text of an
+	 * instruction.
+	 */
+	public static OpcodePattern compileExact(Style style, String... pattern) {
+		Element[] elements = new Element[pattern.length];
+		for (int i = 0; i < pattern.length; i++) {
+			elements[i] = EXACT_ELEMENTS.computeIfAbsent(pattern[i], ExactElement::new);
+		}
+		return new OpcodePattern(elements, style);
+	}
+
+	public int length() {
+		return elements.length;
+	}
+
+	/**
+	 * @return True if the instructions starting at the index match every element.
+	 */
+	public boolean matches(InstructionIndex index, int start) {
+		if (start + elements.length > index.size())
+			return false;
+
+		for (int k = 0; k < elements.length; k++) {
+			if (!elements[k].test(index, start + k, style))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The first index (from the given one) where the pattern matches or -1.
+	 */
+	public int find(InstructionIndex index, int from) {
+		int last = index.size() - elements.length;
+		for (int i = Math.max(0, from); i <= last; i++) {
+			if (matches(index, i))
+				return i;
+		}
+		return -1;
+	}
+
+	private static abstract class Element {
+		abstract boolean test(InstructionIndex index, int i, Style style);
+	}
+
+	private static class RegexElement extends Element {
+		private final Pattern regex;
+		/* Whether the element matches the name of the opcode on its own. */
+		private final boolean[] bare = new boolean[256];
+		/* Whether the element can match the opcode followed by an operand. */
+		private final boolean[] possible = new boolean[256];
+
+		RegexElement(String s) {
+			regex = Pattern.compile(s);
+			for (int op = 0; op < 256; op++) {
+				String name = InstructionIndex.NAMES[op];
+				if (name == null || name.isEmpty())
+					continue;
+				bare[op] = regex.matcher(name).matches();
+				/* If the matcher needed more input than the name and a space,
+				 * some operand could still complete the match. */
+				Matcher m = regex.matcher(name + " ");
+				possible[op] = bare[op] || m.matches() || m.hitEnd();
+			}
+		}
+
+		@Override
+		boolean test(InstructionIndex index, int i, Style style) {
+			int op = index.opcode(i);
+			if (index.isBare(i, style))
+				return bare[op];
+			if (!possible[op])
+				return false;
+			return regex.matcher(index.text(i, style)).matches();
+		}
+	}
+
+	private static class ExactElement extends Element {
+		private final String text;
+		private final int opcode;
+
+		ExactElement(String text) {
+			this.text = text;
+			int opcode = -1;
+			for (int op = 0; op < 256; op++) {
+				if (text.equals(InstructionIndex.NAMES[op])) {
+					opcode = op;
+					break;
+				}
+			}
+			this.opcode = opcode;
+		}
+
+		@Override
+		boolean test(InstructionIndex index, int i, Style style) {
+			if (index.isBare(i, style))
+				return index.opcode(i) == opcode;
+			return text.equals(index.text(i, style));
+		}
+	}
+}
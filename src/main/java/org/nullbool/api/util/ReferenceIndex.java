@@ -0,0 +1,209 @@
+package org.nullbool.api.util;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.objectweb.custom_asm.Opcodes;
+import org.objectweb.custom_asm.tree.AbstractInsnNode;
+import org.objectweb.custom_asm.tree.ClassNode;
+import org.objectweb.custom_asm.tree.FieldInsnNode;
+import org.objectweb.custom_asm.tree.IntInsnNode;
+import org.objectweb.custom_asm.tree.LdcInsnNode;
+import org.objectweb.custom_asm.tree.MethodInsnNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * An index of every field, method and constant that is referenced by the
+ * code in the jar, built once after the jar has been deobfuscated, so that
+ * analysers can look up where something is used instead of going through
+ * every method of every class. <br>
+ *
+ * The sites of a key are in the order that the classes, methods and
+ * instructions were in when the index was built. Code that changes after
+ * that isn't seen by the index.
+ */
+public class ReferenceIndex implements Opcodes {
+
+	private final Map<String, ClassNode> classes;
+	private final List<MethodNode> methods = new ArrayList<MethodNode>();
+	private final Map<String, String> descs = new HashMap<String, String>();
+	private final Map<String, List<Site>> fields = new HashMap<String, List<Site>>();
+	private final Map<String, List<Site>> calls = new HashMap<String, List<Site>>();
+	private final Map<String, List<Site>> descSites = new HashMap<String, List<Site>>();
+	private final Map<Object, List<Site>> ldcs = new HashMap<Object, List<Site>>();
+	private final Map<Number, List<Site>> constants = new HashMap<Number, List<Site>>();
+	private int sites;
+
+	public ReferenceIndex(Map<String, ClassNode> classes) {
+		this.classes = classes;
+		for (ClassNode cn : classes.values()) {
+			for (MethodNode m : cn.methods) {
+				methods.add(m);
+				if (!descs.containsKey(m.desc))
+					descs.put(m.desc, m.desc.replaceAll("[()]", ";"));
+
+				for (AbstractInsnNode ain : m.instructions.snapshot()) {
+					index(m, ain);
+				}
+			}
+		}
+	}
+
+	private void index(MethodNode m, AbstractInsnNode ain) {
+		if (ain instanceof FieldInsnNode) {
+			FieldInsnNode fin = (FieldInsnNode) ain;
+			add(fields, key(fin.owner, fin.name, fin.desc), m, ain);
+			add(descSites, fin.desc, m, ain);
+		} else if (ain instanceof MethodInsnNode) {
+			MethodInsnNode min = (MethodInsnNode) ain;
+			add(calls, key(min.owner, min.name, min.desc), m, ain);
+			add(descSites, min.desc, m, ain);
+		} else if (ain instanceof LdcInsnNode) {
+			Object cst = ((LdcInsnNode) ain).cst;
+			add(ldcs, cst, m, ain);
+			if (cst instanceof Number)
+				add(constants, (Number) cst, m, ain);
+		} else if (ain instanceof IntInsnNode && ain.getOpcode() != NEWARRAY) {
+			add(constants, ((IntInsnNode) ain).operand, m, ain);
+		} else {
+			int op = ain.getOpcode();
+			if (op >= ICONST_M1 && op <= ICONST_5) {
+				add(constants, op - ICONST_0, m, ain);
+			} else if (op == LCONST_0 || op == LCONST_1) {
+				add(constants, (long) (op - LCONST_0), m, ain);
+			} else if (op >= FCONST_0 && op <= FCONST_2) {
+				add(constants, (float) (op - FCONST_0), m, ain);
+			} else if (op == DCONST_0 || op == DCONST_1) {
+				add(constants, (double) (op - DCONST_0), m, ain);
+			}
+		}
+	}
+
+	private <K> void add(Map<K, List<Site>> map, K key, MethodNode m, AbstractInsnNode ain) {
+		List<Site> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<Site>();
+			map.put(key, list);
+		}
+		list.add(new Site(m, ain));
+		sites++;
+	}
+
+	private static String key(String owner, String name, String desc) {
+		return owner + "." + name + " " + desc;
+	}
+
+	/**
+	 * @return True if the index was built from this map of classes.
+	 */
+	public boolean isOf(Map<String, ClassNode> classes) {
+		return this.classes == classes;
+	}
+
+	/**
+	 * @return The field instructions that get or put the field.
+	 */
+	public List<Site> getFieldSites(String owner, String name, String desc) {
+		return get(fields, key(owner, name, desc));
+	}
+
+	/**
+	 * @return The method instructions that call the method.
+	 */
+	public List<Site> getMethodSites(String owner, String name, String desc) {
+		return get(calls, key(owner, name, desc));
+	}
+
+	/**
+	 * @return The field and method instructions whose descriptor is the given one.
+	 */
+	public List<Site> getDescSites(String desc) {
+		return get(descSites, desc);
+	}
+
+	/**
+	 * @return The ldc instructions that load the constant.
+	 */
+	public List<Site> getLdcSites(Object cst) {
+		return get(ldcs, cst);
+	}
+
+	/**
+	 * @return The instructions that push the number (ldc, the xconst
+	 *         instructions, bipush and sipush). The type of the number has to
+	 *         match, ints are pushed as Integers and longs as Longs.
+	 */
+	public List<Site> getConstantSites(Number n) {
+		return get(constants, n);
+	}
+
+	private static <K> List<Site> get(Map<K, List<Site>> map, K key) {
+		List<Site> list = map.get(key);
+		return list != null ? Collections.unmodifiableList(list) : Collections.<Site> emptyList();
+	}
+
+	/**
+	 * Finds the methods whose descriptor, with the brackets replaced by
+	 * semicolons, matches the regex. Every distinct descriptor is only matched
+	 * once.
+	 */
+	public MethodNode[] getMethods(String regularExpression, boolean isStatic) {
+		Pattern p = Pattern.compile(regularExpression);
+		Set<String> matched = new HashSet<String>();
+		for (Map.Entry<String, String> e : descs.entrySet()) {
+			if (p.matcher(e.getValue()).matches())
+				matched.add(e.getKey());
+		}
+
+		List<MethodNode> list = new ArrayList<MethodNode>();
+		if (!matched.isEmpty()) {
+			for (MethodNode m : methods) {
+				if ((!isStatic || Modifier.isStatic(m.access)) && matched.contains(m.desc))
+					list.add(m);
+			}
+		}
+		return list.toArray(new MethodNode[list.size()]);
+	}
+
+	/**
+	 * @return The methods that the sites are in, each only once and in the
+	 *         order of the sites.
+	 */
+	public static List<MethodNode> methods(List<Site> sites) {
+		Set<MethodNode> set = new LinkedHashSet<MethodNode>();
+		for (Site s : sites) {
+			set.add(s.method);
+		}
+		return new ArrayList<MethodNode>(set);
+	}
+
+	public int size() {
+		return sites;
+	}
+
+	public static class Site {
+		private final MethodNode method;
+		private final AbstractInsnNode insn;
+
+		public Site(MethodNode method, AbstractInsnNode insn) {
+			this.method = method;
+			this.insn = insn;
+		}
+
+		public MethodNode method() {
+			return method;
+		}
+
+		public AbstractInsnNode insn() {
+			return insn;
+		}
+	}
+}
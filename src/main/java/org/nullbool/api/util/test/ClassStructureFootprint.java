@@ -0,0 +1,71 @@
+package org.nullbool.api.util.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.ObjectName;
+
+import org.nullbool.api.util.ClassStructure;
+import org.nullbool.api.util.JarParser;
+import org.objectweb.custom_asm.tree.ClassNode;
+
+/**
+ * Loads a gamepack a few times over and prints the heap that each copy
+ * takes up, along with the lines of a class histogram (the same as
+ * jmap -histo:live) for the types that a {@link ClassStructure} holds onto
+ * next to its fields and methods.
+ *
+ * Usage: ClassStructureFootprint &lt;gamepack&gt; [copies]
+ */
+public class ClassStructureFootprint {
+
+	/* The types that a ClassStructure holds onto besides its members. */
+	private static final Set<String> TYPES = new HashSet<String>(Arrays.asList("org.nullbool.api.util.ClassStructure", "org.objectweb.custom_asm.ClassWriter", "org.objectweb.custom_asm.ByteVector", "org.objectweb.custom_asm.Item", "[Lorg.objectweb.custom_asm.Item;", "org.nullbool.api.obfuscation.DirectedGraph", "java.util.ArrayList", "[Ljava.lang.Object;", "[B"));
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.err.println("Usage: ClassStructureFootprint <gamepack> [copies]");
+			return;
+		}
+
+		File file = new File(args[0]);
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		long base = used();
+		List<Map<String, ClassNode>> loaded = new ArrayList<Map<String, ClassNode>>();
+		for(int i=0; i < copies; i++) {
+			loaded.add(new JarParser(file, null).getParsedClasses());
+		}
+		long total = used() - base;
+		System.out.printf("%d copies of %d classes: %.2fMB, %.2fMB per copy.%n", copies, loaded.get(0).size(), total / 1048576D, total / (double) copies / 1048576D);
+
+		String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram", new Object[] { null }, new String[] { String[].class.getName() });
+		long bytes = 0;
+		for(String line : histogram.split("\n")) {
+			String[] cols = line.trim().split("\\s+");
+			if(cols.length >= 4 && TYPES.contains(cols[3])) {
+				System.out.println(line);
+				bytes += Long.parseLong(cols[2]);
+			}
+		}
+		System.out.printf("%.2fMB in those types, %.2fMB per copy.%n", bytes / 1048576D, bytes / (double) copies / 1048576D);
+
+		if(loaded.hashCode() == 0)
+			System.out.println();
+	}
+
+	private static long used() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i=0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
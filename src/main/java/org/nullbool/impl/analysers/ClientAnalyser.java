@@ -21,9 +21,11 @@ import org.topdank.banalysis.asm.insn.InstructionSearcher;
 
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author MalikDz
@@ -40,7 +42,8 @@ import java.util.Map;
                 "hintArrowPlayerId&I","hintArrowIconX&I","hintArrowIconY&I","destinationX&I","destinationY&I",
         },
         methods = {"loadObjDefinition&(I)LObjectDefinition;", "loadItemDefinition&(I)LItemDefinition;",
-                /*"getPlayerModel&()LModel;",*/ "reportException&(Ljava/lang/Throwable;Ljava/lang/String;)WrappedException", "processAction&(IIIILjava/lang/String;Ljava/lang/String;II)V"})
+                /*"getPlayerModel&()LModel;",*/ "reportException&(Ljava/lang/Throwable;Ljava/lang/String;)WrappedException", "processAction&(IIIILjava/lang/String;Ljava/lang/String;II)V"},
+        uses = {"Widget", "Actor"})
 public class ClientAnalyser extends ClassAnalyser {
 
     public ClientAnalyser() throws AnalysisException {
@@ -635,9 +638,10 @@ public class ClientAnalyser extends ClassAnalyser {
         @Override
         public List<FieldHook> findFields(org.objectweb.custom_asm.tree.ClassNode client) {
             List<FieldHook> hooks = new ArrayList<FieldHook>();
+            Set<org.objectweb.custom_asm.tree.MethodNode> candidates = new HashSet<org.objectweb.custom_asm.tree.MethodNode>(methodsOf(getConstantSites(6)));
             for (org.objectweb.custom_asm.tree.ClassNode classNode : Context.current().getClassNodes().values()) {
                 for (org.objectweb.custom_asm.tree.MethodNode m : classNode.methods) {
-                    if (identifyMethod(m,"ldc .*","imul", "iconst_2","if_icmplt") && identifyMethod(m,"ldc .*","imul", "bipush 6","if_icmpgt")) {
+                    if (candidates.contains(m) && identifyMethod(m,"ldc .*","imul", "iconst_2","if_icmplt") && identifyMethod(m,"ldc .*","imul", "bipush 6","if_icmpgt")) {
                         String h, id;
                         id = findField(m, true, false, 1, 's', "ldc .*","imul", "iconst_2","if_icmplt");
                         hooks.add(asFieldHook(id, "hintArrowType"));
@@ -26,7 +26,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 9 Jul 2015 23:52:12
  */
-@SupportedHooks(fields = { "configId&I", "initialBit&I", "endBit&I"}, methods = { })
+@SupportedHooks(fields = { "configId&I", "initialBit&I", "endBit&I"}, methods = { }, depends = { "DualNode" })
 public class VarpbitAnalyser extends ClassAnalyser {
 
 //	private final InstructionPattern pattern;
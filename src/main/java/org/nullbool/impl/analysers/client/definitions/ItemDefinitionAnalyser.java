@@ -23,7 +23,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
 		"maleEquipSecondaryModel&I", "femaleEquipPrimaryModel&I", "femaleEquipSecondaryModel&I", "maleEquipOffset&I", "femaleEquipOffset&I",
 		"maleEmblem&I", "femaleEmblem&I", "maleDialog&I", "maleDialogHat&I", "femaleDialog&I", "femaleDialogHat&I", "noteIndex&I",
 		"noteTemplateIndex&I", "modelWidth&I", "modelHeight&I", "modelBreadth&I", "stackedModelLightModifier&I",
-		"stackedModelShadowModifier&I", "teamIndex&I", }, methods = {})
+		"stackedModelShadowModifier&I", "teamIndex&I", }, methods = {}, depends = { "DualNode" })
 public class ItemDefinitionAnalyser extends ClassAnalyser {
 
 	public ItemDefinitionAnalyser() throws AnalysisException {
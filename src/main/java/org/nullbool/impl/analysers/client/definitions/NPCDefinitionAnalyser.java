@@ -16,7 +16,7 @@ import java.util.List;
  */
 @SupportedHooks(fields = { "id&I","actions&[Ljava/lang/String;", "onMap&Z", "visible&Z", "clickable&Z", "name&Ljava/lang/String;", "combatLevel&I",
 		"width&I", "height&I", "brightness&I", "contrast&I", "headIcon&I", "npcDegToTurn&I", "varpId&I", "settingId&I",
-		"npcBoundDim&I", "idleAnimationId&I", "walkAnimationId&I", "npcTurnAround&I", "npcTurnRight&I", "npcTurnLeft&I", }, methods = {})
+		"npcBoundDim&I", "idleAnimationId&I", "walkAnimationId&I", "npcTurnAround&I", "npcTurnRight&I", "npcTurnLeft&I", }, methods = {}, depends = { "DualNode", "NPC" })
 public class NPCDefinitionAnalyser extends ClassAnalyser {
 
 	public NPCDefinitionAnalyser() throws AnalysisException {
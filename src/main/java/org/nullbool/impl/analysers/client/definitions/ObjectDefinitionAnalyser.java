@@ -21,7 +21,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(fields = { "name&Ljava/lang/String;", "width&I", "height&I", "animationId&I", "objMapScene&I", "modelWidth&I",
 		"modelHeight&I", "modelBreadth&I", "translationX&I", "translationY&I", "translationZ&I", "walkable&Z",
-		"actions&[Ljava/lang/String;", "icon&I", "rotated&Z", "hasCastedShadow&Z", }, methods = {})
+		"actions&[Ljava/lang/String;", "icon&I", "rotated&Z", "hasCastedShadow&Z", }, methods = {}, depends = { "DualNode", "NPCDefinition" })
 public class ObjectDefinitionAnalyser extends ClassAnalyser {
 
 	public ObjectDefinitionAnalyser() throws AnalysisException {
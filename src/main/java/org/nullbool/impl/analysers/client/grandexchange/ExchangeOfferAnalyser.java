@@ -12,7 +12,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(
 		fields = { },
-		methods = { })
+		methods = { }, depends = { "Buffer" })
 public class ExchangeOfferAnalyser extends ClassAnalyser {
 
 	public ExchangeOfferAnalyser() {
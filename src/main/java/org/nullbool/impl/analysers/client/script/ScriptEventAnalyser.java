@@ -24,7 +24,7 @@ import org.topdank.banalysis.asm.insn.InstructionSearcher;
  * @author Bibl (don't ban me pls)
  * @created 5 Jul 2015 00:47:22
  */
-@SupportedHooks(fields = {"args&Object[]", "opbase&String"/*, "isDisposable&Z"*/, "mouseX&I", "mouseY&I"}, methods = { })
+@SupportedHooks(fields = {"args&Object[]", "opbase&String"/*, "isDisposable&Z"*/, "mouseX&I", "mouseY&I"}, methods = { }, depends = { "Node", "DualNode" })
 public class ScriptEventAnalyser extends ClassAnalyser {
 
 	private MethodNode method;
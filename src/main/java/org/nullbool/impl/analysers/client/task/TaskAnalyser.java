@@ -28,7 +28,8 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(
 		fields = { "status&I", "type&I", "intArg&I", "result&Ljava/lang/Object;", "objArg&Ljava/lang/Object;", "next&Task"}, 
-		methods = { }
+		methods = { },
+		depends = { "TaskHandler" }
 )
 public class TaskAnalyser extends ClassAnalyser {
 
@@ -22,7 +22,7 @@ import java.util.List;
         "mouseExitListeners&Object[]", "mouseHoverListeners&Object[]", "configListenerArgs&Object[]", "configTriggers&[I",
         "renderListeners&Object[]", "tableListenerArgs&Object[]", "tableModTriggers&[I", "skillListenerArgs&Object[]",
         "skillTriggers&[I", "scrollListeners&Object[]", "fontId&I", "textShadowed&Z", "shadowColour&I", "flippedVertically&Z",
-        "flippedHorizontally&Z", "children&Widget[]", "itemId&I", "stackSize&I", "widgetType&I", "spriteId&I","loopCycle&I"}, methods = {})
+        "flippedHorizontally&Z", "children&Widget[]", "itemId&I", "stackSize&I", "widgetType&I", "spriteId&I","loopCycle&I"}, methods = {}, depends = { "Node" })
 public class WidgetAnalyser extends ClassAnalyser {
 
     public WidgetAnalyser() throws AnalysisException {
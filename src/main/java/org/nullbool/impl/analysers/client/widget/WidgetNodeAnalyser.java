@@ -20,7 +20,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
 /**
  * @author : MalikDz
  */
-@SupportedHooks(fields = { "widgetId&I", "type&I" }, methods = {})
+@SupportedHooks(fields = { "widgetId&I", "type&I" }, methods = {}, depends = { "Node" })
 public class WidgetNodeAnalyser extends ClassAnalyser {
 
 	public WidgetNodeAnalyser() throws AnalysisException {
@@ -20,7 +20,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
 /**
  * @author MalikDz
  */
-@SupportedHooks(fields = { "head&Node", "tail&Node", }, methods = {})
+@SupportedHooks(fields = { "head&Node", "tail&Node", }, methods = {}, depends = { "Node" })
 public class DequeAnalyser extends ClassAnalyser {
 
 	public DequeAnalyser() throws AnalysisException {
@@ -19,7 +19,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl
  * @author MalikDz
  */
-@SupportedHooks(fields = { "nextDualNode&DualNode", "previousDualNode&DualNode", }, methods = {})
+@SupportedHooks(fields = { "nextDualNode&DualNode", "previousDualNode&DualNode", }, methods = {}, depends = { "Node" })
 public class DualNodeAnalyser extends ClassAnalyser {
 
 	public DualNodeAnalyser() throws AnalysisException {
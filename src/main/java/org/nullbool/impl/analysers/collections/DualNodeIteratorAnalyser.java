@@ -18,7 +18,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 22 Jul 2015 23:03:21
  */
-@SupportedHooks(fields = { "node&DualNode", "next&DualNode", "current&DualNode" }, methods = { })
+@SupportedHooks(fields = { "node&DualNode", "next&DualNode", "current&DualNode" }, methods = { }, depends = { "DualNode", "IterableDualNode" })
 public class DualNodeIteratorAnalyser extends ClassAnalyser {
 
 	public DualNodeIteratorAnalyser() {
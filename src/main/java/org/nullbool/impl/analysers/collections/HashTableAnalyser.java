@@ -28,7 +28,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(
 		fields = { "buckets&[Node", "head&Node", "firstNode&Node", "size&I", "index&I" }, 
-		methods = {"put&(LNode;J)V", "first&()LNode;", "next&()LNode;", "clear&()V", "get&(J)LNode;"})
+		methods = {"put&(LNode;J)V", "first&()LNode;", "next&()LNode;", "clear&()V", "get&(J)LNode;"}, depends = { "Node" })
 public class HashTableAnalyser extends ClassAnalyser {
 
 	private static final int[] PUT_METHOD_PATTERN = new int[]{ALOAD, GETFIELD, IFNULL};
@@ -22,7 +22,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 22 Jul 2015 22:54:04
  */
-@SupportedHooks(fields = { "node&Node" }, methods = { "unlinkAll&()V", "insertBefore&(Node)V" })
+@SupportedHooks(fields = { "node&Node" }, methods = { "unlinkAll&()V", "insertBefore&(Node)V" }, depends = { "DualNode" })
 public class IterableDualNodeAnalyser extends ClassAnalyser {
 
 	public IterableDualNodeAnalyser() {
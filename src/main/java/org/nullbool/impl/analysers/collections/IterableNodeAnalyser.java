@@ -23,7 +23,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 21 Jul 2015 11:16:32
  */
-@SupportedHooks(fields = { "node&Node" }, methods = { "next&(Node)Node", "first&()Node", "insertBefore&(Node)V" })
+@SupportedHooks(fields = { "node&Node" }, methods = { "next&(Node)Node", "first&()Node", "insertBefore&(Node)V" }, depends = { "Node" })
 public class IterableNodeAnalyser extends ClassAnalyser {
 
 	public IterableNodeAnalyser() {
@@ -42,7 +42,7 @@ public class NodeAnalyser extends ClassAnalyser {
 		// System.out.println(rightStructure);
 		// }
 		// return rightStructure && rightField;
-		return cn.superName.equals("java/lang/Object") && ((ClassStructure) cn).delegates.size() > 25;
+		return cn.superName.equals("java/lang/Object") && ((ClassStructure) cn).getDelegates().size() > 25;
 	}
 
 	@Override
@@ -18,7 +18,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author Bibl (don't ban me pls)
  * @created 21 Jul 2015 11:15:46
  */
-@SupportedHooks(fields = { "node&Node", "next&Node", "current&Node" }, methods = { })
+@SupportedHooks(fields = { "node&Node", "next&Node", "current&Node" }, methods = { }, depends = { "Node", "IterableNode" })
 public class NodeIteratorAnalyser extends ClassAnalyser {
 
 	public NodeIteratorAnalyser() {
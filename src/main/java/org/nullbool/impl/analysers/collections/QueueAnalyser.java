@@ -31,7 +31,7 @@ import org.topdank.banalysis.asm.insn.InstructionSearcher;
  */
 @SupportedHooks(fields = { "head&DualNode" }, 
 				methods = { "get&()DualNode", "remove&()DualNode", 
-							"insertHead&(DualNode)V", "insertTail&(DualNode)V" })
+							"insertHead&(DualNode)V", "insertTail&(DualNode)V" }, depends = { "DualNode" }, uses = { "DualNode" })
 public class QueueAnalyser extends ClassAnalyser {
 
 	private ClassNode dual;
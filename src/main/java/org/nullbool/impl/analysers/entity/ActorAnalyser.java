@@ -20,7 +20,7 @@ import java.util.List;
 @SupportedHooks(fields = {"localX&I", "localY&I", "animationId&I", "interactingId&I", "health&I", "maxHealth&I", "hitTypes&[I",
         "message&Ljava/lang/String;", "hitDamages&[I", "hitCycle&I", "orientation&I", /*"healthBarCycle&I" */
         "queueX&[I", "queueY&[I", "queueLength&I", "queueRun&[Z","combatTime&I"},
-        methods = {"queuePosition&(IIZ)V", "move&(IZ)V"})
+        methods = {"queuePosition&(IIZ)V", "move&(IZ)V"}, depends = { "Renderable" })
 public class ActorAnalyser extends ClassAnalyser {
 
     public ActorAnalyser() throws AnalysisException {
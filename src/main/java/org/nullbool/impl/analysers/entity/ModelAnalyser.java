@@ -14,7 +14,7 @@ import java.util.List;
  * @author MalikDz
  */
 @SupportedHooks(fields = { "vertexCount&I", "triangleCount&I", "verticesX&[I", "verticesY&[I", "verticesZ&[I",
-		"indicesX&[I", "indicesY&[I", "indicesZ&[I","vectorSkin&[[I" }, methods = {})
+		"indicesX&[I", "indicesY&[I", "indicesZ&[I","vectorSkin&[[I" }, methods = {}, depends = { "Renderable" })
 public class ModelAnalyser extends ClassAnalyser {
 
 	public ModelAnalyser() throws AnalysisException {
@@ -21,7 +21,7 @@ import org.topdank.banalysis.asm.desc.Desciption;
 /**
  * @author MalikDz
  */
-@SupportedHooks(fields = { "npcDefinition&NPCDefinition", }, methods = {})
+@SupportedHooks(fields = { "npcDefinition&NPCDefinition", }, methods = {}, depends = { "Actor" })
 public class NPCAnalyser extends ClassAnalyser {
 
 	public NPCAnalyser() throws AnalysisException {
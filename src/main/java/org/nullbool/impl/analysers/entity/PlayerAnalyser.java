@@ -15,7 +15,7 @@ import java.util.List;
 /**
  * @author MalikDz
  */
-@SupportedHooks(fields = { "name&Ljava/lang/String;", "playerLevel&I" , "playerSkull&I", "playerOverhead&I"}, methods = {})
+@SupportedHooks(fields = { "name&Ljava/lang/String;", "playerLevel&I" , "playerSkull&I", "playerOverhead&I"}, methods = {}, depends = { "Actor", "NPC" })
 public class PlayerAnalyser extends ClassAnalyser {
 
 	public PlayerAnalyser() throws AnalysisException {
@@ -39,7 +39,7 @@ import org.objectweb.custom_asm.tree.VarInsnNode;
 				"heightStep&D", "radius&I", "rotationX&I", "rotationY&I",
 				"id&I", "sceneId&I", "delay&I", "targetIndex&I", "endHeight&I",
 				"animation&AnimationSequence", "frameCycle&I", "currentFrame&I" }, 
-		methods = { "move&(I)V", "trackTarget&(IIII)V"}
+		methods = { "move&(I)V", "trackTarget&(IIII)V"}, depends = { "Renderable" }
 		)
 public class ProjectileAnalyser extends ClassAnalyser {
 
@@ -16,7 +16,7 @@ import java.util.Set;
 /**
  * @author MalikDz
  */
-@SupportedHooks(fields = { "modelHeight&I" }, methods = {"renderModel&(IIIIIIIII)V"})
+@SupportedHooks(fields = { "modelHeight&I" }, methods = {"renderModel&(IIIIIIIII)V"}, depends = { "Node", "DualNode" })
 public class RenderableAnalyser extends ClassAnalyser {
 
 	public RenderableAnalyser() throws AnalysisException {
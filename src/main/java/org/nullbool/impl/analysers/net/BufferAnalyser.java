@@ -51,7 +51,7 @@ methods = { "enableEncryption&(Ljava/math/BigInteger;Ljava/math/BigInteger;)V",
 		
 		//TODO: Fix read methods
 		/*"read16&()I", "readLE16&()I", "read16B&()I", "readLE16B&()I",*/
-})
+}, depends = { "Node" })
 /**
  * Notes:
  *    write40 was added in rev77.
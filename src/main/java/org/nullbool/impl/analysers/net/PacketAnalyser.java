@@ -17,7 +17,7 @@ import java.util.Set;
 @SupportedHooks(
 		fields = { "cipher&IsaacCipher", "bitCaret&I"}, 
 		methods = { "initCipher&([I)V", "initBitAccess&()V", "finishBitAccess&()V", "readableBytes&(I)I", "readBits&(I)I",
-					"writePacketHeader&(I)V", "readPacketHeader&()I" })
+					"writePacketHeader&(I)V", "readPacketHeader&()I" }, depends = { "Buffer" })
 /**
  * @author Bibl (don't ban me pls)
  * @created 23 May 2015
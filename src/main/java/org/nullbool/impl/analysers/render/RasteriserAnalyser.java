@@ -18,7 +18,7 @@ import org.nullbool.pi.core.hook.api.FieldHook;
  * @author Bibl (don't ban me pls)
  * @created 24 May 2015
  */
-@SupportedHooks(fields = {}, methods = {}) 
+@SupportedHooks(fields = {}, methods = {}, depends = { "DualNode" }) 
 public class RasteriserAnalyser extends ClassAnalyser {
 
 	public RasteriserAnalyser() {
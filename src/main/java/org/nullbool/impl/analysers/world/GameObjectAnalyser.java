@@ -19,7 +19,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  * @author MalikDz
  */
 @SupportedHooks(fields = { "hash&I", "plane&I", "strictX&I", "strictY&I", "localX&I", "localY&I", "width&I", "height&I",
-		"orientation&I", "flags&I", "markedRenderable&Renderable", }, methods = {})
+		"orientation&I", "flags&I", "markedRenderable&Renderable", }, methods = {}, depends = { "Region", "Renderable" })
 public class GameObjectAnalyser extends ClassAnalyser {
 
 	public GameObjectAnalyser() throws AnalysisException {
@@ -21,7 +21,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
 @SupportedHooks(
         fields = {"bottomRenderable&Renderable", "middleRenderable&Renderable", "topRenderable&Renderable", "localX&I", "localY&I",
                 "plane&I", "hash&I", "heightOffset&I"},
-        methods = {})
+        methods = {}, depends = { "Renderable", "Tile" })
 public class GroundDecorationAnalyser extends ClassAnalyser {
 
     public GroundDecorationAnalyser() throws AnalysisException {
@@ -21,7 +21,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
 /**
  * @author MalikDz
  */
-@SupportedHooks(fields = { "id&I", "stackSize&I", }, methods = {})
+@SupportedHooks(fields = { "id&I", "stackSize&I", }, methods = {}, depends = { "Renderable" })
 public class GroundItemAnalyser extends ClassAnalyser {
 
 	public GroundItemAnalyser() throws AnalysisException {
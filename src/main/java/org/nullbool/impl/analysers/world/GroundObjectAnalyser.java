@@ -20,7 +20,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(
 		fields = { "markedRenderable&Renderable", "localX&I", "localY&I", "plane&I", "hash&I", "flags&I", }, 
-		methods = {})
+		methods = {}, depends = { "Renderable", "Tile" })
 public class GroundObjectAnalyser extends ClassAnalyser {
 
 	public GroundObjectAnalyser() throws AnalysisException {
@@ -17,7 +17,7 @@ import org.objectweb.custom_asm.tree.ClassNode;
  * @author MalikDz
  */
 @SupportedHooks(fields = { "objects&[GameObject", "groundObjects&GroundObject", "groundDecorations&GroundDecoration", "wallObjects&WallObject",
-		"wallDecorations&WallDecoration", }, methods = {})
+		"wallDecorations&WallDecoration", }, methods = {}, depends = { "Node", "Region" })
 public class TileAnalyser extends ClassAnalyser {
 
 	public TileAnalyser() throws AnalysisException {
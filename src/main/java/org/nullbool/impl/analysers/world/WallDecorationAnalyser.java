@@ -20,7 +20,7 @@ import org.objectweb.custom_asm.tree.MethodNode;
  */
 @SupportedHooks(
 		fields = { "markerRenderable1&Renderable", "markerRenderable2&Renderable", "localX&I", "localY&I", "plane&I", "hash&I",
-		"flags&I", "orientation1&I", "orientation2&I", }, methods = {})
+		"flags&I", "orientation1&I", "orientation2&I", }, methods = {}, depends = { "Renderable", "Tile" })
 public class WallDecorationAnalyser extends ClassAnalyser {
 
 	public WallDecorationAnalyser() throws AnalysisException {
@@ -15,7 +15,7 @@ import java.util.List;
  */
 @SupportedHooks(
 		fields = { "markerRenderable1&Renderable", "markerRenderable2&Renderable", "localX&I", "localY&I", "plane&I", "hash&I",
-		"flags&I", "orientation1&I", "orientation2&I", }, methods = {})
+		"flags&I", "orientation1&I", "orientation2&I", }, methods = {}, depends = { "Renderable", "Tile" })
 public class WallObjectAnalyser extends ClassAnalyser {
 
 	public WallObjectAnalyser() throws AnalysisException {
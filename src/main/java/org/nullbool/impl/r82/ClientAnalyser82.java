@@ -40,6 +40,11 @@ public class ClientAnalyser82 extends ClientAnalyser79 {
 		return new Builder<String>(super.supportedMethods()).addAll("loadWorlds&Z").asArray(new String[0]);
 	}
 
+	@Override
+	public String[] usedHooks() {
+		return new Builder<String>(super.usedHooks()).addAll("World").asArray(new String[0]);
+	}
+
 	private static boolean same(Set<FieldInsnNode> fins) {
 		String key = null;
 		for (FieldInsnNode fin : fins) {
@@ -131,13 +131,11 @@ public class ClientAnalyser90 extends ClientAnalyser82 {
         public List<FieldHook> findFields(ClassNode cn) {
             ArrayList<FieldHook> fieldHooks = new ArrayList<>();
             ClassHook collisionMap = getAnalyser("CollisionMap").getFoundHook();
-            for (ClassNode classNode : Context.current().getClassNodes().values()) {
-                for (MethodNode method : classNode.methods) {
-                    String[] pattern = {"getstatic .*", "iload .*", "new " + collisionMap.obfuscated(), "dup", "bipush 104", "bipush 104"};
-                    if (Modifier.isStatic(method.access) && identifyMethod(method, pattern)) {
-                        String field = findField(method, true, true, 1, 's', pattern);
-                        fieldHooks.add(asFieldHook(field, "collisionMaps"));
-                    }
+            String[] pattern = {"getstatic .*", "iload .*", "new " + collisionMap.obfuscated(), "dup", "bipush 104", "bipush 104"};
+            for (MethodNode method : methodsOf(getConstantSites(104))) {
+                if (Modifier.isStatic(method.access) && identifyMethod(method, pattern)) {
+                    String field = findField(method, true, true, 1, 's', pattern);
+                    fieldHooks.add(asFieldHook(field, "collisionMaps"));
                 }
             }
             return fieldHooks;
@@ -148,14 +146,12 @@ public class ClientAnalyser90 extends ClientAnalyser82 {
         @Override
         public List<FieldHook> findFields(ClassNode cn) {
             ArrayList<FieldHook> fieldHooks = new ArrayList<>();
-            for (ClassNode classNode : Context.current().getClassNodes().values()) {
-                for (MethodNode method : classNode.methods) {
-                    String[] pattern1 = {"bipush 100", "idiv", "iconst_4", "iadd"};
-                    String[] pattern2 = {"iconst_4","getstatic .*","ldc .*","imul","bipush 100", "idiv", "iadd"};
-                    if (Modifier.isStatic(method.access) && (identifyMethod(method, pattern1)) || identifyMethod(method, pattern2)) {
-                        String field = findField(method, true, true, 1, 's', "getstatic .* I", "ldc .*", "imul", "iconst_2", "if_icmpne");
-                        fieldHooks.add(asFieldHook(field, "crosshairColor"));
-                    }
+            String[] pattern1 = {"bipush 100", "idiv", "iconst_4", "iadd"};
+            String[] pattern2 = {"iconst_4","getstatic .*","ldc .*","imul","bipush 100", "idiv", "iadd"};
+            for (MethodNode method : methodsOf(getConstantSites(100))) {
+                if (Modifier.isStatic(method.access) && (identifyMethod(method, pattern1)) || identifyMethod(method, pattern2)) {
+                    String field = findField(method, true, true, 1, 's', "getstatic .* I", "ldc .*", "imul", "iconst_2", "if_icmpne");
+                    fieldHooks.add(asFieldHook(field, "crosshairColor"));
                 }
             }
             return fieldHooks;
@@ -167,16 +163,14 @@ public class ClientAnalyser90 extends ClientAnalyser82 {
         @Override
         public List<FieldHook> findFields(ClassNode cn) {
             ArrayList<FieldHook> fieldHooks = new ArrayList<>();
-            for (ClassNode classNode : Context.current().getClassNodes().values()) {
-                for (MethodNode method : classNode.methods) {
-                    if (identifyMethod(method, new String[] {"bipush 24","idiv"}) &&
-                            identifyMethod(method,new String[] {"bipush 80","idiv"})) {
-                        String field1 = findField(method, true, false, 1, 's', "bipush 24","idiv");
-                        String field2 = findField(method, true, false, 1, 's', "bipush 80","idiv");
-                        if(field1.equals(field2)) {
-                            fieldHooks.add(asFieldHook(field1, "lowestPitch"));
-                            return fieldHooks;
-                        }
+            for (MethodNode method : methodsOf(getConstantSites(24))) {
+                if (identifyMethod(method, new String[] {"bipush 24","idiv"}) &&
+                        identifyMethod(method,new String[] {"bipush 80","idiv"})) {
+                    String field1 = findField(method, true, false, 1, 's', "bipush 24","idiv");
+                    String field2 = findField(method, true, false, 1, 's', "bipush 80","idiv");
+                    if(field1.equals(field2)) {
+                        fieldHooks.add(asFieldHook(field1, "lowestPitch"));
+                        return fieldHooks;
                     }
                 }
             }
@@ -1,15 +1,15 @@
 package org.nullbool.pi.core.hook.api;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ClassHook extends ObfuscatedData {
 
 	private static final long serialVersionUID = -6864421229081291283L;
 
-	private final List<InterfaceMapping> interfaces = new ArrayList<InterfaceMapping>();
-	private final List<FieldHook> fields            = new ArrayList<FieldHook>();
-	private final List<MethodHook> methods          = new ArrayList<MethodHook>();
+	private final List<InterfaceMapping> interfaces = new CopyOnWriteArrayList<InterfaceMapping>();
+	private final List<FieldHook> fields            = new CopyOnWriteArrayList<FieldHook>();
+	private final List<MethodHook> methods          = new CopyOnWriteArrayList<MethodHook>();
 
 	public ClassHook() {
 	}
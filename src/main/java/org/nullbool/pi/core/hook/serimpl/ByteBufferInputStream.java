@@ -0,0 +1,49 @@
+package org.nullbool.pi.core.hook.serimpl;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads from a buffer, from its position, without copying it first.
+ */
+class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buf;
+	
+	ByteBufferInputStream(ByteBuffer buf) {
+		this.buf = buf;
+	}
+	
+	public int position() {
+		return buf.position();
+	}
+	
+	@Override
+	public int read() {
+		return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if(len == 0)
+			return 0;
+		if(!buf.hasRemaining())
+			return -1;
+		len = Math.min(len, buf.remaining());
+		buf.get(b, off, len);
+		return len;
+	}
+	
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+		((Buffer) buf).position(buf.position() + skipped);
+		return skipped;
+	}
+	
+	@Override
+	public int available() {
+		return buf.remaining();
+	}
+}
@@ -24,4 +24,13 @@ public class CharsEntry_2 extends PoolEntry {
 			dos.writeChar(c);
 		}
 	}
+	
+	@Override
+	public void writeCompact(DataOutputStream dos) throws IOException {
+		super.writeCompact(dos);
+		VarInts.writeVarInt(dos, chars.length);
+		for(char c : chars) {
+			VarInts.writeVarInt(dos, c);
+		}
+	}
 }
\ No newline at end of file
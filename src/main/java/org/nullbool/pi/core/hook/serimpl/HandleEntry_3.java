@@ -30,4 +30,13 @@ public class HandleEntry_3 extends PoolEntry {
 		dos.writeInt(index2);
 		dos.writeInt(index3);
 	}
+	
+	@Override
+	public void writeCompact(DataOutputStream dos) throws IOException {
+		super.writeCompact(dos);
+		VarInts.writeVarInt(dos, handle.getTag());
+		VarInts.writeVarInt(dos, index1);
+		VarInts.writeVarInt(dos, index2);
+		VarInts.writeVarInt(dos, index3);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package org.nullbool.pi.core.hook.serimpl;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+import org.nullbool.pi.core.hook.api.ClassHook;
+import org.nullbool.pi.core.hook.api.FieldHook;
+import org.nullbool.pi.core.hook.api.HookMap;
+import org.nullbool.pi.core.hook.api.MethodHook;
+import org.objectweb.custom_asm.tree.InsnList;
+
+/**
+ * A read only view of a map in the indexed (v3) format. Only the pool is
+ * read up front. A class is read from the buffer the first time that it's
+ * asked for, its fields and methods the first time that they're asked for
+ * and the code of a method the first time that {@link MethodHook#insns()}
+ * is called on it. <br>
+ *
+ * The buffer can be a memory mapped file, which is then only paged in for
+ * the hooks that are used. Hooks can be looked up from several threads.
+ */
+public class LazyHookMap extends HookMap {
+
+	private final ByteBuffer buf;
+	private final StaticMapDeserialiserImpl deserialiser;
+	private final Pool pool;
+	/* Where the content (and so the offsets) start in the buffer. */
+	private final int content;
+	private final int[] classOffsets;
+	
+	private LazyHookMap(int version, ByteBuffer buf, StaticMapDeserialiserImpl deserialiser, Pool pool, int content, int[] classOffsets) {
+		super(version);
+		this.buf = buf;
+		this.deserialiser = deserialiser;
+		this.pool = pool;
+		this.content = content;
+		this.classOffsets = classOffsets;
+		classes(Collections.unmodifiableList(new Hooks<ClassHook>(classOffsets, 0, classOffsets.length) {
+			@Override
+			ClassHook read(int offset) throws IOException {
+				return readClass(offset);
+			}
+		}));
+	}
+	
+	/**
+	 * @param buf A v3 map, from the position of the buffer.
+	 */
+	static LazyHookMap read(ByteBuffer buf, StaticMapDeserialiserImpl deserialiser) throws IOException {
+		buf = buf.duplicate();
+		ByteBufferInputStream bbis = new ByteBufferInputStream(buf);
+		DataInputStream dis = new DataInputStream(bbis);
+		if(dis.readInt() != StaticMapSerialiserImpl.MAGIC || dis.readUnsignedByte() != StaticMapSerialiserImpl.V3)
+			throw new IOException("Not an indexed map.");
+		
+		int version = VarInts.readVarInt(dis);
+		Pool pool = new Pool(dis, true);
+		int content = bbis.position();
+		
+		int[] classOffsets = new int[VarInts.readVarInt(dis)];
+		for(int i=0; i < classOffsets.length; i++) {
+			classOffsets[i] = dis.readInt();
+		}
+		return new LazyHookMap(version, buf, deserialiser, pool, content, classOffsets);
+	}
+	
+	public int classCount() {
+		return classOffsets.length;
+	}
+	
+	private ByteBufferInputStream at(int offset) {
+		ByteBuffer dup = buf.duplicate();
+		((Buffer) dup).position(content + offset);
+		return new ByteBufferInputStream(dup);
+	}
+	
+	private ClassHook readClass(int offset) throws IOException {
+		DataInputStream dis = new DataInputStream(at(offset));
+		LazyClassHook ch = new LazyClassHook();
+		deserialiser.readCompactData(dis, pool, ch);
+		
+		int fields = VarInts.readVarInt(dis);
+		int[] offsets = new int[fields + VarInts.readVarInt(dis)];
+		for(int i=0; i < offsets.length; i++) {
+			offsets[i] = dis.readInt();
+		}
+		ch.index(offsets, fields);
+		return ch;
+	}
+	
+	private FieldHook readField(ClassHook owner, int offset) throws IOException {
+		FieldHook fh = new FieldHook(owner);
+		deserialiser.readCompactData(new DataInputStream(at(offset)), pool, fh);
+		return fh;
+	}
+	
+	private MethodHook readMethod(ClassHook owner, int offset) throws IOException {
+		ByteBufferInputStream bbis = at(offset);
+		LazyMethodHook mh = new LazyMethodHook(owner);
+		deserialiser.readCompactData(new DataInputStream(bbis), pool, mh);
+		/* The code comes straight after the hook. */
+		mh.code = bbis.position() - content;
+		return mh;
+	}
+	
+	private InsnList readCode(int offset) throws IOException {
+		DataInputStream dis = new DataInputStream(at(offset));
+		int length = VarInts.readVarInt(dis);
+		return length == 0 ? new InsnList() : deserialiser.readCompactCode(dis, pool);
+	}
+	
+	/* Hooks at offsets[from, from + size) that are read when they're first
+	 * asked for. */
+	private abstract class Hooks<T> extends AbstractList<T> {
+		private final int[] offsets;
+		private final int from;
+		private final Object[] hooks;
+		
+		Hooks(int[] offsets, int from, int size) {
+			this.offsets = offsets;
+			this.from = from;
+			hooks = new Object[size];
+		}
+		
+		abstract T read(int offset) throws IOException;
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public T get(int index) {
+			synchronized (LazyHookMap.this) {
+				Object hook = hooks[index];
+				if(hook == null) {
+					try {
+						hook = hooks[index] = read(offsets[from + index]);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return (T) hook;
+			}
+		}
+		
+		@Override
+		public int size() {
+			return hooks.length;
+		}
+	}
+	
+	/* The fields and methods of a class are read on their own. */
+	private class LazyClassHook extends ClassHook {
+		private static final long serialVersionUID = 1L;
+		
+		private List<FieldHook> fields;
+		private List<MethodHook> methods;
+		
+		void index(int[] offsets, int fieldCount) {
+			fields = Collections.unmodifiableList(new Hooks<FieldHook>(offsets, 0, fieldCount) {
+				@Override
+				FieldHook read(int offset) throws IOException {
+					return readField(LazyClassHook.this, offset);
+				}
+			});
+			methods = Collections.unmodifiableList(new Hooks<MethodHook>(offsets, fieldCount, offsets.length - fieldCount) {
+				@Override
+				MethodHook read(int offset) throws IOException {
+					return readMethod(LazyClassHook.this, offset);
+				}
+			});
+		}
+		
+		@Override
+		public List<FieldHook> fields() {
+			return fields;
+		}
+		
+		@Override
+		public List<MethodHook> methods() {
+			return methods;
+		}
+		
+		@Override
+		public FieldHook fbyRefactoredName(String name) {
+			for(FieldHook fh : fields) {
+				if(fh.refactored().equals(name))
+					return fh;
+			}
+			return null;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(baseToString()).append("\n");
+			for(FieldHook f : fields) {
+				sb.append("   ").append(f.baseToString()).append("\n");
+			}
+			
+			for(MethodHook m : methods) {
+				sb.append("   ").append(m.baseToString()).append("\n");
+			}
+			return sb.toString();
+		}
+	}
+	
+	/* The code is read when it's first asked for. */
+	private class LazyMethodHook extends MethodHook {
+		private static final long serialVersionUID = 1L;
+		
+		private int code;
+		private boolean read;
+		
+		LazyMethodHook(ClassHook owner) {
+			super(owner);
+		}
+		
+		@Override
+		public InsnList insns() {
+			synchronized (LazyHookMap.this) {
+				if(!read) {
+					try {
+						super.insns(readCode(code));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					read = true;
+				}
+				return super.insns();
+			}
+		}
+		
+		@Override
+		public MethodHook insns(InsnList instructions) {
+			synchronized (LazyHookMap.this) {
+				read = true;
+				return super.insns(instructions);
+			}
+		}
+	}
+}
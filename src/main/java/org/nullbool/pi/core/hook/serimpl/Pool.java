@@ -3,69 +3,91 @@ package org.nullbool.pi.core.hook.serimpl;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.objectweb.custom_asm.Handle;
 
+/**
+ * The entries are kept in a list in the order that they were allocated in,
+ * so an index is just a position in the list. Strings, chars and handles are
+ * also hashed to the index of the first entry with the same value so that
+ * they're only written once.
+ */
 public class Pool {
 
-	private Map<PoolEntry, Integer> pool;
-	private Map<Integer, PoolEntry> reversePool;
+	private final List<PoolEntry> entries;
+	private final Map<String, Integer> strings;
+	private final Map<String, Integer> chars;
+	private final Map<Handle, Integer> handles;
 	
 	public Pool() {
-		pool = new LinkedHashMap<PoolEntry, Integer>();
+		this(16);
+	}
+	
+	private Pool(int size) {
+		entries = new ArrayList<PoolEntry>(size);
+		strings = new HashMap<String, Integer>();
+		chars = new HashMap<String, Integer>();
+		handles = new HashMap<Handle, Integer>();
 	}
 	
 	public Pool(DataInputStream dis) throws IOException {
-		int size = dis.readInt();
-		pool = new LinkedHashMap<PoolEntry, Integer>(size);
-
+		this(dis, false);
+	}
+	
+	/**
+	 * @param compact Whether the pool was written in the compact (v2) format.
+	 */
+	public Pool(DataInputStream dis, boolean compact) throws IOException {
+		this(dis, compact, compact ? VarInts.readVarInt(dis) : dis.readInt());
+	}
+	
+	private Pool(DataInputStream dis, boolean compact, int size) throws IOException {
+		this(size);
+		
 		for(int i=0; i < size; i++) {
-			PoolEntry next = create(dis);
-			pool.put(next, i);
+			allocateNext(compact ? createCompact(dis) : create(dis));
 		}
-		
-		//System.out.println("size: " + pool.size());
 	}
 	
-	public Map<Integer, PoolEntry> reversePool() {
-		if(reversePool == null || reversePool.size() != pool.size()) {
-			reversePool = new LinkedHashMap<Integer, PoolEntry>();
-			for(Entry<PoolEntry, Integer> e : pool.entrySet()) {
-				reversePool.put(e.getValue(), e.getKey());
-			}
-		}
-		
-		return reversePool;
+	/**
+	 * @return The entries, in the order of their indices.
+	 */
+	public List<PoolEntry> entries() {
+		return Collections.unmodifiableList(entries);
+	}
+	
+	public int size() {
+		return entries.size();
 	}
 	
 	@SuppressWarnings("unchecked")
 	public <T extends PoolEntry> T get(int index) {
-		return (T) reversePool().get(index);
+		return (T) entries.get(index);
 	}
 	
 	public int allocateNext(PoolEntry e) {
-		int index = pool.size();
-		pool.put(e, index);
+		int index = entries.size();
+		entries.add(e);
+		
+		if(e instanceof StringEntry_0) {
+			strings.putIfAbsent(((StringEntry_0) e).value(), index);
+		} else if(e instanceof CharsEntry_2) {
+			chars.putIfAbsent(new String(((CharsEntry_2) e).getChars()), index);
+		} else if(e instanceof HandleEntry_3) {
+			handles.putIfAbsent(((HandleEntry_3) e).getHandle(), index);
+		}
 		return index;
 	}
 	
 	public int findChars(char[] chars) {
-		for(Entry<PoolEntry, Integer> e : pool.entrySet()) {
-			PoolEntry en = e.getKey();
-			if(en instanceof CharsEntry_2) {
-				CharsEntry_2 c = (CharsEntry_2) en;
-				if(c.getChars().length == chars.length) {
-					char[] chars2 = c.getChars();
-					if(Arrays.equals(chars, chars2))
-						return e.getValue();
-				}
-			}
-		}
-		return -1;
+		Integer index = this.chars.get(new String(chars));
+		return index != null ? index : -1;
 	}
 	
 	public int allocateChars(char[] chars) {
@@ -78,15 +100,8 @@ public class Pool {
 	}
 	
 	public int findString(String s) {
-		for(Entry<PoolEntry, Integer> e : pool.entrySet()) {
-			PoolEntry en = e.getKey();
-			if(en instanceof StringEntry_0) {
-				StringEntry_0 se = (StringEntry_0) en;
-				if(s.equals(se.value()))
-					return e.getValue();
-			}
-		}
-		return -1;
+		Integer index = strings.get(s);
+		return index != null ? index : -1;
 	}
 	
 	public int allocateString(String s) {
@@ -99,25 +114,24 @@ public class Pool {
 	}
 	
 	public int findHandle(int tag, String owner, String name, String desc) {
-		for(Entry<PoolEntry, Integer> e : pool.entrySet()) {
-			PoolEntry en = e.getKey();
-			if(en instanceof HandleEntry_3) {
-				HandleEntry_3 se = (HandleEntry_3) en;
-				Handle h = se.getHandle();
-				if(h.getTag() == tag && h.getOwner().equals(owner) && h.getName().equals(name) && h.getDesc().equals(desc))
-					return e.getValue();
-		
-			}
-		}
-		return -1;
+		Integer index = handles.get(new Handle(tag, owner, name, desc));
+		return index != null ? index : -1;
 	}
 	
 	public int write(DataOutputStream dos) throws IOException {
-		dos.writeInt(pool.size());
-		for(PoolEntry entry : pool.keySet()) {
+		dos.writeInt(entries.size());
+		for(PoolEntry entry : entries) {
 			entry.write(dos);
 		}
-		return pool.size();
+		return entries.size();
+	}
+	
+	public int writeCompact(DataOutputStream dos) throws IOException {
+		VarInts.writeVarInt(dos, entries.size());
+		for(PoolEntry entry : entries) {
+			entry.writeCompact(dos);
+		}
+		return entries.size();
 	}
 	
 	public PoolEntry create(DataInputStream dis) throws IOException {
@@ -126,10 +140,17 @@ public class Pool {
 			case 0: {
 				int length = dis.readInt();
 				byte[] bytes = new byte[length];
-				dis.read(bytes);
+				dis.readFully(bytes);
 				String name = new String(bytes);
 				return new StringEntry_0(this, name);
 			}
+			case 2: {
+				char[] chars = new char[dis.readInt()];
+				for(int i=0; i < chars.length; i++) {
+					chars[i] = dis.readChar();
+				}
+				return new CharsEntry_2(this, chars);
+			}
 			//case 1: {
 			//	boolean method = dis.readBoolean();
 			//	int index = dis.readInt();
@@ -141,4 +162,32 @@ public class Pool {
 			}
 		}
 	}
+	
+	public PoolEntry createCompact(DataInputStream dis) throws IOException {
+		int tag = dis.readUnsignedByte();
+		switch(tag) {
+			case 0: {
+				byte[] bytes = new byte[VarInts.readVarInt(dis)];
+				dis.readFully(bytes);
+				return new StringEntry_0(this, new String(bytes, StandardCharsets.UTF_8));
+			}
+			case 2: {
+				char[] chars = new char[VarInts.readVarInt(dis)];
+				for(int i=0; i < chars.length; i++) {
+					chars[i] = (char) VarInts.readVarInt(dis);
+				}
+				return new CharsEntry_2(this, chars);
+			}
+			case 3: {
+				int type = VarInts.readVarInt(dis);
+				String owner = this.<StringEntry_0> get(VarInts.readVarInt(dis)).value();
+				String name = this.<StringEntry_0> get(VarInts.readVarInt(dis)).value();
+				String desc = this.<StringEntry_0> get(VarInts.readVarInt(dis)).value();
+				return new HandleEntry_3(this, new Handle(type, owner, name, desc));
+			}
+			default: {
+				throw new IOException(String.format("Invalid tag: %d.", tag));
+			}
+		}
+	}
 }
\ No newline at end of file
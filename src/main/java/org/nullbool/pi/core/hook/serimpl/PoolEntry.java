@@ -17,6 +17,14 @@ public class PoolEntry {
 		dos.writeByte(tag); 
 	}
 	
+	/**
+	 * Writes the entry in the compact (v2) format, which uses varints for
+	 * lengths and indices.
+	 */
+	public void writeCompact(DataOutputStream dos) throws IOException {
+		dos.writeByte(tag);
+	}
+	
 	public int tag(){
 		return tag;
 	}
@@ -1,8 +1,14 @@
 package org.nullbool.pi.core.hook.serimpl;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -10,6 +16,7 @@ import org.nullbool.pi.core.hook.api.ClassHook;
 import org.nullbool.pi.core.hook.api.FieldHook;
 import org.nullbool.pi.core.hook.api.HookMap;
 import org.nullbool.pi.core.hook.api.MethodHook;
+import org.nullbool.pi.core.hook.api.ObfuscatedData;
 import org.nullbool.pi.core.hook.api.serialisation.IMapDeserialiser;
 import org.objectweb.custom_asm.Opcodes;
 import org.objectweb.custom_asm.Type;
@@ -36,6 +43,8 @@ import org.objectweb.custom_asm.tree.VarInsnNode;
  */
 public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 
+	private static final byte[] CONTENT_TYPE = "content-type=".getBytes(StandardCharsets.US_ASCII);
+
 	/* (non-Javadoc)
 	 * @see org.nullbool.zbot.pi.core.hook.serialisation.IMapDeserialiser#deserialise(java.io.InputStream)
 	 */
@@ -43,6 +52,9 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 	public HookMap deserialise(InputStream is) throws IOException {
 		DataInputStream dis = new DataInputStream(is);
 		int ver = dis.readInt();
+		if(ver == StaticMapSerialiserImpl.MAGIC)
+			return deserialiseCompact(dis);
+		
 		Pool pool = new Pool(dis);
 		HookMap map = new HookMap(ver);
 		
@@ -87,6 +99,253 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 		return map;
 	}
 	
+	/**
+	 * Reads a map from a buffer, which can be a memory mapped file. If the map
+	 * is in the indexed (v3) format, a {@link LazyHookMap} is returned, which
+	 * only reads the hooks from the buffer when they're asked for. Other maps
+	 * are read straight away.
+	 * 
+	 * @param buf The buffer, from its position.
+	 */
+	public HookMap deserialiseLazily(ByteBuffer buf) throws IOException {
+		ByteBuffer dup = buf.duplicate();
+		if(dup.remaining() >= 5 && dup.getInt() == StaticMapSerialiserImpl.MAGIC && dup.get() == StaticMapSerialiserImpl.V3)
+			return LazyHookMap.read(buf, this);
+		return deserialise(new ByteBufferInputStream(buf.duplicate()));
+	}
+	
+	/**
+	 * Maps the file into memory and reads the map from it with
+	 * {@link #deserialiseLazily(ByteBuffer)}. The content type line at the
+	 * start of a log is skipped.
+	 */
+	public HookMap deserialiseLazily(File file) throws IOException {
+		try(FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buf = fc.map(MapMode.READ_ONLY, 0, fc.size());
+			if(startsWith(buf, CONTENT_TYPE)) {
+				while(buf.hasRemaining() && buf.get() != '\n');
+			}
+			return deserialiseLazily(buf);
+		}
+	}
+	
+	private static boolean startsWith(ByteBuffer buf, byte[] prefix) {
+		if(buf.remaining() < prefix.length)
+			return false;
+		for(int i=0; i < prefix.length; i++) {
+			if(buf.get(buf.position() + i) != prefix[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/* See StaticMapSerialiserImpl for the v2 and v3 formats. */
+	private HookMap deserialiseCompact(DataInputStream dis) throws IOException {
+		int format = dis.readUnsignedByte();
+		if(format != StaticMapSerialiserImpl.V2 && format != StaticMapSerialiserImpl.V3)
+			throw new IOException("Unknown format: " + format);
+		boolean indexed = format == StaticMapSerialiserImpl.V3;
+		
+		HookMap map = new HookMap(VarInts.readVarInt(dis));
+		Pool pool = new Pool(dis, true);
+		
+		int c_count = VarInts.readVarInt(dis);
+		if(indexed)
+			skip(dis, c_count * 4);
+		
+		for(int i=0; i < c_count; i++) {
+			ClassHook ch = new ClassHook();
+			readCompactData(dis, pool, ch);
+			
+			int f_count = VarInts.readVarInt(dis);
+			int m_count = 0;
+			if(indexed) {
+				m_count = VarInts.readVarInt(dis);
+				skip(dis, (f_count + m_count) * 4);
+			}
+			
+			for(int j=0; j < f_count; j++) {
+				FieldHook fh = new FieldHook(ch);
+				readCompactData(dis, pool, fh);
+				ch.fields().add(fh);
+			}
+			
+			if(!indexed)
+				m_count = VarInts.readVarInt(dis);
+			
+			for(int j=0; j < m_count; j++) {
+				MethodHook mh = new MethodHook(ch);
+				readCompactData(dis, pool, mh);
+				int length = VarInts.readVarInt(dis);
+				mh.insns(length == 0 ? new InsnList() : readCompactCode(dis, pool));
+				ch.methods().add(mh);
+			}
+			
+			map.classes().add(ch);
+		}
+		
+		return map;
+	}
+	
+	private static void skip(DataInputStream dis, int n) throws IOException {
+		while(n > 0) {
+			int skipped = dis.skipBytes(n);
+			if(skipped <= 0) {
+				dis.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+	
+	void readCompactData(DataInputStream dis, Pool pool, ObfuscatedData d) throws IOException {
+		d.obfuscated(pool.<StringEntry_0> get(VarInts.readVarInt(dis)).value());
+		d.refactored(pool.<StringEntry_0> get(VarInts.readVarInt(dis)).value());
+		
+		int size = VarInts.readVarInt(dis);
+		for(int i=0; i < size; i++) {
+			String key = pool.<StringEntry_0> get(VarInts.readVarInt(dis)).value();
+			String val = pool.<StringEntry_0> get(VarInts.readVarInt(dis)).value();
+			d.var(key, val);
+		}
+	}
+	
+	InsnList readCompactCode(DataInputStream dis, Pool pool) throws IOException {
+		InsnList list = new InsnList();
+		
+		int size = VarInts.readVarInt(dis);
+		LabelNode[] labels = new LabelNode[VarInts.readVarInt(dis)];
+		for(int i=0; i < labels.length; i++) {
+			labels[i] = new LabelNode();
+		}
+		
+		int label = 0, line = 0;
+		for(int i=0; i < size; i++) {
+			int type = dis.readUnsignedByte();
+			if(type == AbstractInsnNode.LABEL) {
+				list.add(labels[label++]);
+			} else if(type == AbstractInsnNode.LINE) {
+				line += VarInts.readSignedVarInt(dis);
+				list.add(new LineNumberNode(line, labels[VarInts.readVarInt(dis)]));
+			} else {
+				list.add(readCompactInstruction(dis, pool, labels, type));
+			}
+		}
+		
+		return list;
+	}
+	
+	private AbstractInsnNode readCompactInstruction(DataInputStream dis, Pool pool, LabelNode[] labels, int type) throws IOException {
+		int opcode = dis.readUnsignedByte();
+		
+		switch(type) {
+			case AbstractInsnNode.INSN: {
+				return new InsnNode(opcode);
+			}
+			case AbstractInsnNode.INT_INSN: {
+				return new IntInsnNode(opcode, VarInts.readSignedVarInt(dis));
+			}
+			case AbstractInsnNode.VAR_INSN: {
+				return new VarInsnNode(opcode, VarInts.readVarInt(dis));
+			}
+			case AbstractInsnNode.TYPE_INSN: {
+				String desc = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				return new TypeInsnNode(opcode, desc);
+			}
+			case AbstractInsnNode.FIELD_INSN: {
+				String o = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				String n = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				String d = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				return new FieldInsnNode(opcode, o, n, d);
+			}
+			case AbstractInsnNode.METHOD_INSN: {
+				String o = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				String n = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				String d = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				return new MethodInsnNode(opcode, o, n, d, opcode == Opcodes.INVOKEINTERFACE);
+			}
+			case AbstractInsnNode.JUMP_INSN: {
+				return new JumpInsnNode(opcode, labels[VarInts.readVarInt(dis)]);
+			}
+			case AbstractInsnNode.LDC_INSN: {
+				byte t = dis.readByte();
+				Object cst = null;
+				switch(t) {
+					case 0: {
+						cst = dis.readFloat();
+						break;
+					}
+					case 1: {
+						cst = dis.readDouble();
+						break;
+					}
+					case 2: {
+						cst = VarInts.readSignedVarLong(dis);
+						break;
+					}
+					case 3: {
+						cst = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+						break;
+					}
+					case 4: {
+						cst = VarInts.readSignedVarInt(dis);
+						break;
+					}
+					case 5: {
+						int sort = VarInts.readVarInt(dis);
+						char[] chars = pool.<CharsEntry_2>get(VarInts.readVarInt(dis)).getChars();
+						int off = VarInts.readVarInt(dis);
+						int len = VarInts.readVarInt(dis);
+						cst = new Type(sort, chars, off, len);
+						break;
+					}
+					default: {
+						throw new IOException("Unknown ldc type: " + t);
+					}
+				}
+				
+				return new LdcInsnNode(cst);
+			}
+			case AbstractInsnNode.IINC_INSN: {
+				int var = VarInts.readVarInt(dis);
+				int inc = VarInts.readSignedVarInt(dis);
+				return new IincInsnNode(var, inc);
+			}
+			case AbstractInsnNode.TABLESWITCH_INSN: {
+				int min = VarInts.readSignedVarInt(dis);
+				int max = VarInts.readSignedVarInt(dis);
+				LabelNode dflt = labels[VarInts.readVarInt(dis)];
+				int count = VarInts.readVarInt(dis);
+				LabelNode[] targets = new LabelNode[count];
+				for(int i=0; i < count; i++) {
+					targets[i] = labels[VarInts.readVarInt(dis)];
+				}
+				return new TableSwitchInsnNode(min, max, dflt, targets);
+			}
+			case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+				LabelNode dflt = labels[VarInts.readVarInt(dis)];
+				int count = VarInts.readVarInt(dis);
+				int[] keys = new int[count];
+				LabelNode[] targets = new LabelNode[count];
+				int key = 0;
+				for(int i=0; i < count; i++) {
+					key += VarInts.readSignedVarInt(dis);
+					keys[i] = key;
+					targets[i] = labels[VarInts.readVarInt(dis)];
+				}
+				return new LookupSwitchInsnNode(dflt, keys, targets);
+			}
+			case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+				int dims = VarInts.readVarInt(dis);
+				String desc = pool.<StringEntry_0>get(VarInts.readVarInt(dis)).value();
+				return new MultiANewArrayInsnNode(desc, dims);
+			}
+			default: {
+				throw new IOException("Invalid type: " + type);
+			}
+		}
+	}
+	
 	private Map<String, String> deserialiseMap(DataInputStream dis, Pool pool) throws IOException {
 		Map<String, String> map = new HashMap<String, String>();
 		int size = dis.readInt();
@@ -186,7 +445,7 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 						break;
 					}
 					case 3: {
-						cst = pool.<StringEntry_0>get(dis.readInt());
+						cst = pool.<StringEntry_0>get(dis.readInt()).value();
 						break;
 					}
 					case 4: {
@@ -194,11 +453,12 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 						break;
 					}
 					case 5: {
-						int sort = dis.readShort();
+						int sort = dis.readInt();
 						char[] chars = pool.<CharsEntry_2>get(dis.readInt()).getChars();
 						int off = dis.readInt();
 						int len = dis.readInt();
 						cst = new Type(sort, chars, off, len);
+						break;
 					}
 					default: {
 						throw new IOException("Unknown ldc type: " + t);
@@ -215,19 +475,21 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 			case AbstractInsnNode.TABLESWITCH_INSN: {
 				int min = dis.readShort();
 				int max = dis.readShort();
-				LabelNode dflt = labels.get(dis.readShort());
+				LabelNode dflt = labels.get(dis.readUnsignedShort());
 				TableSwitchInsnNode tsin = new TableSwitchInsnNode(min, max, dflt, new LabelNode[0]);
-				for(int i=0; i < dis.readShort(); i++) {
-					tsin.labels.add(labels.get(dis.readShort()));
+				int count = dis.readUnsignedShort();
+				for(int i=0; i < count; i++) {
+					tsin.labels.add(labels.get(dis.readUnsignedShort()));
 				}
 				return tsin;
 			}
 			case AbstractInsnNode.LOOKUPSWITCH_INSN: {
-				LabelNode dflt = labels.get(dis.readShort());
+				LabelNode dflt = labels.get(dis.readUnsignedShort());
 				LookupSwitchInsnNode lsin = new LookupSwitchInsnNode(dflt, new int[0], new LabelNode[0]);
-				for(int i=0; i < dis.readShort(); i++) {
+				int count = dis.readUnsignedShort();
+				for(int i=0; i < count; i++) {
 					int key = dis.readInt();
-					LabelNode l = labels.get(dis.readShort());
+					LabelNode l = labels.get(dis.readUnsignedShort());
 					lsin.keys.add(key);
 					lsin.labels.add(l);
 				}
@@ -246,7 +508,7 @@ public class StaticMapDeserialiserImpl implements IMapDeserialiser<HookMap> {
 			}
 			case AbstractInsnNode.LINE: {
 				int line = dis.readInt();
-				LabelNode l = labels.get(dis.readShort());
+				LabelNode l = labels.get(dis.readUnsignedShort());
 				return new LineNumberNode(line, l);
 			}
 			default: {
@@ -1,5 +1,6 @@
 package org.nullbool.pi.core.hook.serimpl;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -38,13 +39,52 @@ import org.objectweb.custom_asm.tree.VarInsnNode;
  */
 public class StaticMapSerialiserImpl implements IMapSerialiser<HookMap> {
 
-	// TODO: varint?
+	/* A v2 or v3 map starts with "bser" and then the format. A v1 map
+	 * starts with the version of the map instead. */
+	public static final int MAGIC = 0x62736572;
+	public static final int V1 = 1;
+	public static final int V2 = 2;
+	/* v2 with offset tables, see LazyHookMap. */
+	public static final int V3 = 3;
+	
+	private final int format;
+	
+	/**
+	 * Writes the v1 format, as that's the only one that the clients that are
+	 * already out there can read.
+	 */
+	public StaticMapSerialiserImpl() {
+		this(V1);
+	}
+	
+	/**
+	 * @param format {@link #V1}, {@link #V2} or {@link #V3}.
+	 */
+	public StaticMapSerialiserImpl(int format) {
+		if(format < V1 || format > V3)
+			throw new IllegalArgumentException(String.format("Unknown format: %d.", format));
+		this.format = format;
+	}
+	
+	/**
+	 * @return The content type of the format that is written, "bser" for
+	 *         {@link #V1} and "bser2" or "bser3" for the others, so that a
+	 *         reader that only knows v1 can tell them apart by the header.
+	 */
+	public String contentType() {
+		return format == V1 ? "bser" : "bser" + format;
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.nullbool.zbot.pi.core.hook.serialisation.IMapSerialiser#serialise(org.nullbool.zbot.pi.core.hook.HookMap, java.io.DataInputStream)
 	 */
 	@Override
 	public void serialise(HookMap map, OutputStream os) throws IOException {
+		if(format != V1) {
+			serialiseCompact(map, os);
+			return;
+		}
+		
 		ByteArrayOutputStream contentBoas = new ByteArrayOutputStream();
 		DataOutputStream contentDos = new DataOutputStream(contentBoas);
 		
@@ -83,6 +123,248 @@ public class StaticMapSerialiserImpl implements IMapSerialiser<HookMap> {
 		dos.write(contentBoas.toByteArray());
 	}
 	
+	/*
+	 * The v2 format:
+	 * {
+	 *   u4       magic;
+	 *   u1       format;
+	 *   varint   version;
+	 *   pool     pool;
+	 *   varint   class_count;
+	 *   class    classes[class_count];
+	 * }
+	 * 
+	 * Every count, pool index, local and operand is a varint. The hooks are
+	 * written as in v1 but without the two names in the variables, which
+	 * are already written before them. The code of a method comes after its
+	 * length in bytes, so that a reader can skip it:
+	 * {
+	 *   varint   code_length;
+	 *   varint   insn_count;       (frames aren't written)
+	 *   varint   label_count;
+	 *   insn     insns[insn_count];
+	 * }
+	 * 
+	 * v3 is the same but it has the offset of every class and member (from
+	 * the end of the pool), so that a class or member can be read without
+	 * reading the ones before it:
+	 * {
+	 *   varint   class_count;
+	 *   u4       class_offsets[class_count];
+	 *   class    classes[class_count];
+	 * }
+	 * 
+	 * class
+	 * {
+	 *   data     data;
+	 *   varint   field_count;
+	 *   varint   method_count;
+	 *   u4       member_offsets[field_count + method_count];
+	 *   field    fields[field_count];
+	 *   method   methods[method_count];
+	 * }
+	 */
+	private void serialiseCompact(HookMap map, OutputStream os) throws IOException {
+		Pool pool = new Pool();
+		Content content = new Content(pool, map.classes());
+		content.write();
+		
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+		dos.writeInt(MAGIC);
+		dos.writeByte(format);
+		VarInts.writeVarInt(dos, map.version());
+		pool.writeCompact(dos);
+		content.writeTo(dos);
+		dos.flush();
+	}
+	
+	private void writeCompactData(DataOutputStream dos, Pool pool, ObfuscatedData d) throws IOException {
+		VarInts.writeVarInt(dos, pool.allocateString(d.obfuscated()));
+		VarInts.writeVarInt(dos, pool.allocateString(d.refactored()));
+		
+		Map<String, String> map = d.variables();
+		int size = map.size();
+		if(map.containsKey(ObfuscatedData.OBFUSCATED))
+			size--;
+		if(map.containsKey(ObfuscatedData.REFACTORED))
+			size--;
+		
+		VarInts.writeVarInt(dos, size);
+		for(Entry<String, String> e : map.entrySet()) {
+			String key = e.getKey();
+			if(key.equals(ObfuscatedData.OBFUSCATED) || key.equals(ObfuscatedData.REFACTORED))
+				continue;
+			VarInts.writeVarInt(dos, pool.allocateString(key));
+			VarInts.writeVarInt(dos, pool.allocateString(e.getValue()));
+		}
+	}
+	
+	private void writeCompactCode(DataOutputStream dos, InsnList insns, Pool pool) throws IOException {
+		if(insns == null || insns.size() == 0)
+			return;
+		
+		AbstractInsnNode[] arr = insns.toArray();
+		Map<LabelNode, Integer> labels = mapLabels(arr);
+		
+		int count = 0;
+		for(AbstractInsnNode ain : arr) {
+			if(ain.getType() != AbstractInsnNode.FRAME)
+				count++;
+		}
+		
+		VarInts.writeVarInt(dos, count);
+		VarInts.writeVarInt(dos, labels.size());
+		
+		/* Labels are numbered in the order that they're in, so a label
+		 * is just its type and a line is the difference to the last one. */
+		int line = 0;
+		for(AbstractInsnNode ain : arr) {
+			switch(ain.getType()) {
+				case AbstractInsnNode.FRAME: {
+					break;
+				}
+				case AbstractInsnNode.LABEL: {
+					dos.writeByte(AbstractInsnNode.LABEL);
+					break;
+				}
+				case AbstractInsnNode.LINE: {
+					LineNumberNode lnn = (LineNumberNode) ain;
+					dos.writeByte(AbstractInsnNode.LINE);
+					VarInts.writeSignedVarInt(dos, lnn.line - line);
+					VarInts.writeVarInt(dos, labels.get(lnn.start));
+					line = lnn.line;
+					break;
+				}
+				default: {
+					writeCompactInstruction(dos, pool, labels, ain);
+					break;
+				}
+			}
+		}
+	}
+	
+	private void writeCompactInstruction(DataOutputStream dos, Pool pool, Map<LabelNode, Integer> labels, AbstractInsnNode insn) throws IOException {
+		/* {
+		 *   u1   type;
+		 *   u1   opcode;
+		 * 
+		 *   ux   extra_data;
+		 * }
+		 */
+		dos.writeByte(insn.getType());
+		dos.writeByte(insn.getOpcode());
+		
+		switch(insn.getType()){
+			case AbstractInsnNode.INSN:{
+				break;
+			}
+			case AbstractInsnNode.INT_INSN:{
+				VarInts.writeSignedVarInt(dos, ((IntInsnNode) insn).operand);
+				break;
+			}
+			case AbstractInsnNode.VAR_INSN:{
+				VarInts.writeVarInt(dos, ((VarInsnNode) insn).var);
+				break;
+			}
+			case AbstractInsnNode.TYPE_INSN:{
+				VarInts.writeVarInt(dos, pool.allocateString(((TypeInsnNode) insn).desc));
+				break;
+			}
+			case AbstractInsnNode.FIELD_INSN:{
+				FieldInsnNode fin = (FieldInsnNode) insn;
+				VarInts.writeVarInt(dos, pool.allocateString(fin.owner));
+				VarInts.writeVarInt(dos, pool.allocateString(fin.name));
+				VarInts.writeVarInt(dos, pool.allocateString(fin.desc));
+				break;
+			}
+			case AbstractInsnNode.METHOD_INSN:{
+				MethodInsnNode min = (MethodInsnNode) insn;
+				VarInts.writeVarInt(dos, pool.allocateString(min.owner));
+				VarInts.writeVarInt(dos, pool.allocateString(min.name));
+				VarInts.writeVarInt(dos, pool.allocateString(min.desc));
+				break;
+			}
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN:{
+				throw new IOException("Cannot serialise invokedynamics at the moment.");
+			}
+			case AbstractInsnNode.JUMP_INSN:{
+				VarInts.writeVarInt(dos, labels.get(((JumpInsnNode) insn).label));
+				break;
+			}
+			case AbstractInsnNode.LDC_INSN:{
+				/* The same constant types as v1. */
+				Object cst = ((LdcInsnNode) insn).cst;
+				if(cst instanceof Float) {
+					dos.writeByte(0);
+					dos.writeFloat((float) cst);
+				} else if (cst instanceof Double) {
+					dos.writeByte(1);
+					dos.writeDouble((double) cst);
+				} else if(cst instanceof Long) {
+					dos.writeByte(2);
+					VarInts.writeSignedVarLong(dos, (long) cst);
+				} else if (cst instanceof String) {
+					dos.writeByte(3);
+					VarInts.writeVarInt(dos, pool.allocateString((String) cst));
+				} else if(cst instanceof Integer) {
+					dos.writeByte(4);
+					VarInts.writeSignedVarInt(dos, (int) cst);
+				} else if (cst instanceof Type) {
+					Type type = (Type) cst;
+					dos.writeByte(5);
+					VarInts.writeVarInt(dos, type.getSort());
+					VarInts.writeVarInt(dos, pool.allocateChars(type.getBuf()));
+					VarInts.writeVarInt(dos, type.getOff());
+					VarInts.writeVarInt(dos, type.getLen());
+				} else {
+					throw new RuntimeException(String.format("Illegal type %s (%s)", cst, cst == null ? "NULL" : cst.getClass().getCanonicalName()));
+				}
+				break;
+			}
+			case AbstractInsnNode.IINC_INSN:{
+				IincInsnNode inc = (IincInsnNode) insn;
+				VarInts.writeVarInt(dos, inc.var);
+				VarInts.writeSignedVarInt(dos, inc.incr);
+				break;
+			}
+			case AbstractInsnNode.TABLESWITCH_INSN:{
+				TableSwitchInsnNode tsin = (TableSwitchInsnNode) insn;
+				VarInts.writeSignedVarInt(dos, tsin.min);
+				VarInts.writeSignedVarInt(dos, tsin.max);
+				VarInts.writeVarInt(dos, labels.get(tsin.dflt));
+				VarInts.writeVarInt(dos, tsin.labels.size());
+				for(LabelNode n : tsin.labels) {
+					VarInts.writeVarInt(dos, labels.get(n));
+				}
+				break;
+			}
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:{
+				LookupSwitchInsnNode lsin = (LookupSwitchInsnNode) insn;
+				if(lsin.keys.size() != lsin.labels.size())
+					throw new RuntimeException(String.format("Different lengths: %s %s", lsin.keys, lsin.labels));
+				
+				/* The keys are sorted, so each one is written as the
+				 * difference to the one before it. */
+				VarInts.writeVarInt(dos, labels.get(lsin.dflt));
+				VarInts.writeVarInt(dos, lsin.keys.size());
+				int last = 0;
+				for(int i = 0; i < lsin.keys.size(); i++) {
+					int key = lsin.keys.get(i);
+					VarInts.writeSignedVarInt(dos, key - last);
+					VarInts.writeVarInt(dos, labels.get(lsin.labels.get(i)));
+					last = key;
+				}
+				break;
+			}
+			case AbstractInsnNode.MULTIANEWARRAY_INSN:{
+				MultiANewArrayInsnNode mnin = (MultiANewArrayInsnNode) insn;
+				VarInts.writeVarInt(dos, mnin.dims);
+				VarInts.writeVarInt(dos, pool.allocateString(mnin.desc));
+				break;
+			}
+		}
+	}
+	
 	private void serialiseMap(DataOutputStream dos, Pool pool, Map<String, String> map) throws IOException {
 		dos.writeInt(map.size());
 		for(Entry<String, String> e : map.entrySet()) {
@@ -292,7 +574,7 @@ public class StaticMapSerialiserImpl implements IMapSerialiser<HookMap> {
 				
 				dos.writeShort(lsin.keys.size());
 				for(int i = 0; i < lsin.keys.size(); i++) {
-					int key         = (Integer) lsin.keys.get(i);
+					int key         = lsin.keys.get(i);
 					LabelNode label = lsin.labels.get(i);
 					
 					dos.writeInt(key);
@@ -318,4 +600,85 @@ public class StaticMapSerialiserImpl implements IMapSerialiser<HookMap> {
 			}
 		}
 	}
+	
+	/* The content of a v2 or v3 map. The pool has to be written before it,
+	 * so it's written once into this buffer (which fills the pool) and the
+	 * offsets are filled in as the classes and members that they point to
+	 * are written. */
+	private class Content extends ByteArrayOutputStream {
+		private final Pool pool;
+		private final List<ClassHook> classes;
+		private final DataOutputStream dos;
+		private final ByteArrayOutputStream code;
+		private final DataOutputStream codeDos;
+		
+		Content(Pool pool, List<ClassHook> classes) {
+			this.pool = pool;
+			this.classes = classes;
+			dos = new DataOutputStream(this);
+			code = new ByteArrayOutputStream();
+			codeDos = new DataOutputStream(code);
+		}
+		
+		void write() throws IOException {
+			boolean indexed = format == V3;
+			
+			VarInts.writeVarInt(dos, classes.size());
+			int classOffsets = reserve(indexed ? classes.size() : 0);
+			
+			for(int i=0; i < classes.size(); i++) {
+				ClassHook c = classes.get(i);
+				if(indexed)
+					setInt(classOffsets + (i * 4), count);
+				writeCompactData(dos, pool, c);
+				
+				List<FieldHook> fields = c.fields();
+				List<MethodHook> methods = c.methods();
+				
+				VarInts.writeVarInt(dos, fields.size());
+				int memberOffsets = 0;
+				if(indexed) {
+					VarInts.writeVarInt(dos, methods.size());
+					memberOffsets = reserve(fields.size() + methods.size());
+				}
+				
+				for(int j=0; j < fields.size(); j++) {
+					if(indexed)
+						setInt(memberOffsets + (j * 4), count);
+					writeCompactData(dos, pool, fields.get(j));
+				}
+				
+				if(!indexed)
+					VarInts.writeVarInt(dos, methods.size());
+				
+				for(int j=0; j < methods.size(); j++) {
+					MethodHook m = methods.get(j);
+					if(indexed)
+						setInt(memberOffsets + ((fields.size() + j) * 4), count);
+					writeCompactData(dos, pool, m);
+					
+					code.reset();
+					writeCompactCode(codeDos, m.insns(), pool);
+					VarInts.writeVarInt(dos, code.size());
+					code.writeTo(dos);
+				}
+			}
+		}
+		
+		/* Writes space for n offsets and returns where it starts. */
+		private int reserve(int n) throws IOException {
+			int pos = count;
+			for(int i=0; i < n; i++) {
+				dos.writeInt(0);
+			}
+			return pos;
+		}
+		
+		private void setInt(int pos, int v) {
+			buf[pos]     = (byte) (v >>> 24);
+			buf[pos + 1] = (byte) (v >>> 16);
+			buf[pos + 2] = (byte) (v >>> 8);
+			buf[pos + 3] = (byte) v;
+		}
+	}
 }
\ No newline at end of file
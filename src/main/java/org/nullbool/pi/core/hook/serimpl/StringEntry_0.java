@@ -2,6 +2,7 @@ package org.nullbool.pi.core.hook.serimpl;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class StringEntry_0 extends PoolEntry {
 
@@ -20,6 +21,14 @@ public class StringEntry_0 extends PoolEntry {
 		dos.write(bytes);
 	}
 	
+	@Override
+	public void writeCompact(DataOutputStream dos) throws IOException {
+		super.writeCompact(dos);
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		VarInts.writeVarInt(dos, bytes.length);
+		dos.write(bytes);
+	}
+	
 	public String value(){
 		return string;
 	}
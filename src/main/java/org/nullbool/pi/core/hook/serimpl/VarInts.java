@@ -0,0 +1,76 @@
+package org.nullbool.pi.core.hook.serimpl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Unsigned LEB128 varints (7 bits per byte, low bits first, with the top bit
+ * set on every byte but the last) and zigzag encoded signed ones, so that
+ * small negative numbers are small too.
+ */
+public final class VarInts {
+
+	private VarInts() {
+	}
+	
+	public static void writeVarInt(DataOutput out, int v) throws IOException {
+		while((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+	
+	public static int readVarInt(DataInput in) throws IOException {
+		int v = 0;
+		for(int shift=0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint.");
+	}
+	
+	public static void writeSignedVarInt(DataOutput out, int v) throws IOException {
+		writeVarInt(out, (v << 1) ^ (v >> 31));
+	}
+	
+	public static int readSignedVarInt(DataInput in) throws IOException {
+		int v = readVarInt(in);
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	public static void writeSignedVarLong(DataOutput out, long v) throws IOException {
+		v = (v << 1) ^ (v >> 63);
+		while((v & ~0x7FL) != 0) {
+			out.writeByte((int) (v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+	
+	public static long readSignedVarLong(DataInput in) throws IOException {
+		long v = 0;
+		for(int shift=0; shift < 70; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return (v >>> 1) ^ -(v & 1);
+		}
+		throw new IOException("Malformed varint.");
+	}
+	
+	/**
+	 * @return The number of bytes that the unsigned varint takes up.
+	 */
+	public static int size(int v) {
+		int size = 1;
+		while((v & ~0x7F) != 0) {
+			v >>>= 7;
+			size++;
+		}
+		return size;
+	}
+}
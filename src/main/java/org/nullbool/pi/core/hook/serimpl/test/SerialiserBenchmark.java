@@ -0,0 +1,90 @@
+package org.nullbool.pi.core.hook.serimpl.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import org.nullbool.api.util.JarParser;
+import org.nullbool.pi.core.hook.api.ClassHook;
+import org.nullbool.pi.core.hook.api.Constants;
+import org.nullbool.pi.core.hook.api.FieldHook;
+import org.nullbool.pi.core.hook.api.HookMap;
+import org.nullbool.pi.core.hook.api.MethodHook;
+import org.nullbool.pi.core.hook.serimpl.StaticMapDeserialiserImpl;
+import org.nullbool.pi.core.hook.serimpl.StaticMapSerialiserImpl;
+import org.objectweb.custom_asm.tree.ClassNode;
+import org.objectweb.custom_asm.tree.FieldNode;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+/**
+ * Times {@link StaticMapSerialiserImpl} and {@link StaticMapDeserialiserImpl}
+ * with every format on a HookMap that hooks every class,
+ * field and method (with its code) of a gamepack, which is a lot more than
+ * the analysers find but gives the pool the same sort of strings as a full
+ * map of a revision (i.e. r105).
+ *
+ * Usage: SerialiserBenchmark &lt;gamepack&gt; [rounds]
+ */
+public class SerialiserBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: SerialiserBenchmark <gamepack> [rounds]");
+			return;
+		}
+
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		Map<String, ClassNode> classes;
+		try(JarFile jar = new JarFile(new File(args[0]))) {
+			classes = new JarParser(jar).getParsedClasses();
+		}
+
+		HookMap map = new HookMap(1);
+		int fields = 0, methods = 0, insns = 0;
+		for(ClassNode cn : classes.values()) {
+			ClassHook c = new ClassHook(cn.name, cn.name);
+			for(FieldNode f : cn.fields) {
+				c.fields().add(new FieldHook(c).obfuscated(f.name).refactored(f.name).var(Constants.DESC, f.desc));
+				fields++;
+			}
+			for(MethodNode m : cn.methods) {
+				c.methods().add(new MethodHook(m.instructions).obfuscated(m.name).refactored(m.name).var(Constants.DESC, m.desc));
+				methods++;
+				insns += m.instructions.size();
+			}
+			map.classes().add(c);
+		}
+		System.out.printf("%d classes, %d fields, %d methods, %d instructions.%n", classes.size(), fields, methods, insns);
+
+		StaticMapDeserialiserImpl deserialiser = new StaticMapDeserialiserImpl();
+		for(int r=0; r < rounds; r++) {
+			for(int format : new int[] { StaticMapSerialiserImpl.V1, StaticMapSerialiserImpl.V2, StaticMapSerialiserImpl.V3 }) {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				long start = System.nanoTime();
+				new StaticMapSerialiserImpl(format).serialise(map, baos);
+				long write = System.nanoTime() - start;
+				byte[] bytes = baos.toByteArray();
+				start = System.nanoTime();
+				deserialiser.deserialise(new ByteArrayInputStream(bytes));
+				long read = System.nanoTime() - start;
+				System.out.printf("round %d: v%d written in %.2fms, read in %.2fms, %d bytes.%n", r, format, write / 1e6, read / 1e6, bytes.length);
+				
+				if(format == StaticMapSerialiserImpl.V3) {
+					/* Open the map and get the code of one method. */
+					start = System.nanoTime();
+					HookMap lazy = deserialiser.deserialiseLazily(ByteBuffer.wrap(bytes));
+					ClassHook c = lazy.classes().get(lazy.classes().size() / 2);
+					if(!c.methods().isEmpty())
+						c.methods().get(0).insns();
+					long open = System.nanoTime() - start;
+					System.out.printf("round %d: v3 opened lazily and one method read in %.2fms.%n", r, open / 1e6);
+				}
+			}
+		}
+	}
+}
@@ -152,7 +152,7 @@ public class TreeBuilder {
         NodeTree tree = new NodeTree(mn);
         List<AbstractNode> nodes = new ArrayList<>();
         long start = System.nanoTime();
-        for (org.objectweb.custom_asm.tree.AbstractInsnNode ain : mn.instructions.toArray()) {
+        for (org.objectweb.custom_asm.tree.AbstractInsnNode ain : mn.instructions.snapshot()) {
 //        	if(ain == null) {
 //        		System.out.println("NULL INSN NIGGER AT " + mn);
 //        		System.exit(10);
@@ -0,0 +1,101 @@
+package org.objectweb.custom_asm.commons.cfg.tree.util;
+
+import org.objectweb.custom_asm.commons.cfg.tree.NodeTree;
+import org.objectweb.custom_asm.tree.InsnList;
+import org.objectweb.custom_asm.tree.MethodNode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link NodeTree} of each method so that passes which don't
+ * change the code can share one tree instead of building it again. <br>
+ * A tree is only reused while the method still has the same {@link InsnList}
+ * and the list has not been modified since the tree was built.
+ */
+public class TreeCache {
+
+    private final Map<MethodNode, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong buildTime = new AtomicLong();
+    private final AtomicLong savedTime = new AtomicLong();
+
+    /**
+     * Gets the cached tree of the method or builds (and caches) a new one
+     * with the given builder if there isn't a valid one.
+     */
+    public NodeTree get(MethodNode mn, TreeBuilder builder) {
+        InsnList insns = mn.instructions;
+        Entry e = cache.get(mn);
+        if (e != null && e.insns == insns && e.modCount == insns.getModCount()) {
+            hits.incrementAndGet();
+            savedTime.addAndGet(e.time);
+            return e.tree;
+        }
+        misses.incrementAndGet();
+        long start = builder.create + builder.iterate;
+        NodeTree tree = builder.build(mn);
+        long time = (builder.create + builder.iterate) - start;
+        buildTime.addAndGet(time);
+        cache.put(mn, new Entry(tree, insns, insns.getModCount(), time));
+        return tree;
+    }
+
+    /**
+     * Removes the tree of a method that may have been changed without
+     * going through its InsnList.
+     */
+    public void invalidate(MethodNode mn) {
+        cache.remove(mn);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public long getBuildTime() {
+        return buildTime.get();
+    }
+
+    public long getSavedTime() {
+        return savedTime.get();
+    }
+
+    public void output() {
+        System.err.printf("Tree cache: %d hits, %d misses (%.2f%% hit rate), built in %.2fms, saved %.2fms.%n",
+                hits.get(), misses.get(), getHitRate() * 100, buildTime.get() / 1e6, savedTime.get() / 1e6);
+    }
+
+    private static class Entry {
+        private final NodeTree tree;
+        private final InsnList insns;
+        private final int modCount;
+        private final long time;
+
+        public Entry(NodeTree tree, InsnList insns, int modCount, long time) {
+            this.tree = tree;
+            this.insns = insns;
+            this.modCount = modCount;
+            this.time = time;
+        }
+    }
+}
@@ -59,6 +59,21 @@ public class InsnList {
      */
     AbstractInsnNode[] cache;
 
+    /**
+     * The last view of {@link #cache} given out by {@link #snapshot()}. The
+     * cache is copied before it's changed in place while it's shared. This is
+     * volatile so that a snapshot made by one thread is seen fully built by
+     * the others.
+     */
+    private volatile InsnSnapshot snapshot;
+
+    /**
+     * The number of times this list has been modified. This count is
+     * incremented by all the methods that modify the list and can be used to
+     * check if data that was derived from the list is out of date.
+     */
+    private int modCount;
+
     /**
      * Returns the number of instructions in this list.
      * 
@@ -68,6 +83,15 @@ public class InsnList {
         return size;
     }
 
+    /**
+     * Returns the number of times this list has been modified.
+     * 
+     * @return the modification count of this list.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
     /**
      * Returns the first instruction in this list.
      * 
@@ -198,6 +222,29 @@ public class InsnList {
         return insns;
     }
 
+    /**
+     * Returns a read-only view of the instructions in this list. The view is
+     * backed by the cache that {@link #get} uses, so unlike {@link #toArray()}
+     * it doesn't allocate anything if the list hasn't changed since the last
+     * call. Later changes to the list aren't seen by the view. It can be
+     * called from more than one thread at once as long as none of them
+     * change the list.
+     * 
+     * @return a view of the instructions in this list.
+     */
+    public InsnSnapshot snapshot() {
+        InsnSnapshot s = snapshot;
+        if (s == null || s.getModCount() != modCount) {
+            /* Built into a local array, as the cache may be being filled by
+             * another thread and is only safe to read through the snapshot
+             * that publishes it. */
+            AbstractInsnNode[] insns = toArray();
+            cache = insns;
+            snapshot = s = new InsnSnapshot(this, insns, modCount);
+        }
+        return s;
+    }
+
     /**
      * Replaces an instruction of this list with another instruction.
      * 
@@ -224,11 +271,16 @@ public class InsnList {
         }
         if (cache != null) {
             int index = location.index;
+            if (snapshot != null && snapshot.insns == cache) {
+                cache = cache.clone();
+                snapshot = null;
+            }
             cache[index] = insn;
             insn.index = index;
         } else {
             insn.index = 0; // insn now belongs to an InsnList
         }
+        ++modCount;
         location.index = -1; // i no longer belongs to an InsnList
         location.prev = null;
         location.next = null;
@@ -252,6 +304,7 @@ public class InsnList {
         }
         last = insn;
         cache = null;
+        ++modCount;
         insn.index = 0; // insn now belongs to an InsnList
     }
 
@@ -277,6 +330,7 @@ public class InsnList {
             last = insns.last;
         }
         cache = null;
+        ++modCount;
         insns.removeAll(false);
     }
 
@@ -298,6 +352,7 @@ public class InsnList {
         }
         first = insn;
         cache = null;
+        ++modCount;
         insn.index = 0; // insn now belongs to an InsnList
     }
 
@@ -323,6 +378,7 @@ public class InsnList {
             first = insns.first;
         }
         cache = null;
+        ++modCount;
         insns.removeAll(false);
     }
 
@@ -349,6 +405,7 @@ public class InsnList {
         insn.next = next;
         insn.prev = location;
         cache = null;
+        ++modCount;
         insn.index = 0; // insn now belongs to an InsnList
     }
 
@@ -379,6 +436,7 @@ public class InsnList {
         ilast.next = next;
         ifirst.prev = location;
         cache = null;
+        ++modCount;
         insns.removeAll(false);
     }
 
@@ -405,6 +463,7 @@ public class InsnList {
         insn.next = location;
         insn.prev = prev;
         cache = null;
+        ++modCount;
         insn.index = 0; // insn now belongs to an InsnList
     }
 
@@ -436,6 +495,7 @@ public class InsnList {
         ilast.next = location;
         ifirst.prev = prev;
         cache = null;
+        ++modCount;
         insns.removeAll(false);
     }
 
@@ -467,6 +527,7 @@ public class InsnList {
             }
         }
         cache = null;
+        ++modCount;
         insn.index = -1; // insn no longer belongs to an InsnList
         insn.prev = null;
         insn.next = null;
@@ -494,6 +555,7 @@ public class InsnList {
         first = null;
         last = null;
         cache = null;
+        ++modCount;
     }
 
     /**
@@ -0,0 +1,91 @@
+/***
+ * ASM: a very small and fast Java bytecode manipulation framework
+ * Copyright (c) 2000-2011 INRIA, France Telecom
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holders nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.objectweb.custom_asm.tree;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view of the instructions of an {@link InsnList} at one point in
+ * time. It shares the array that the list keeps for {@link InsnList#get}, so
+ * taking one doesn't copy the instructions if the list already has that
+ * array. Changing the list afterwards doesn't change the view, which can tell
+ * that it's out of date with {@link #isStale()}.
+ * 
+ * @see InsnList#snapshot()
+ */
+public final class InsnSnapshot extends AbstractList<AbstractInsnNode>
+        implements RandomAccess {
+
+    private final InsnList list;
+
+    /**
+     * The instructions of the list. Never changed once the view is made.
+     */
+    final AbstractInsnNode[] insns;
+
+    private final int modCount;
+
+    InsnSnapshot(final InsnList list, final AbstractInsnNode[] insns,
+            final int modCount) {
+        this.list = list;
+        this.insns = insns;
+        this.modCount = modCount;
+    }
+
+    @Override
+    public AbstractInsnNode get(final int index) {
+        return insns[index];
+    }
+
+    @Override
+    public int size() {
+        return insns.length;
+    }
+
+    /**
+     * Returns the modification count of the list when this view was made.
+     * 
+     * @return the {@link InsnList#getModCount() modification count} of the
+     *         list when this view was made.
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns whether the list has been changed since this view was made.
+     * 
+     * @return <tt>true</tt> if the list has been modified since.
+     */
+    public boolean isStale() {
+        return list.getModCount() != modCount;
+    }
+}
@@ -1,7 +1,6 @@
 package org.topdank.banalysis.asm.insn;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -32,7 +31,7 @@ public class InstructionSearcher implements Opcodes {
 	}
 	
 	public InstructionSearcher(InsnList insns, InstructionPattern pattern) {
-		this.insns = Arrays.asList(insns.toArray());
+		this.insns = insns.snapshot();
 		this.pattern = pattern;
 		matches = new ArrayList<AbstractInsnNode[]>();
 	}
@@ -1,12 +1,22 @@
 package org.topdank.byteio.out;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
 
 import org.nullbool.api.obfuscation.refactor.ClassTree;
 import org.nullbool.api.util.ClassStructure;
@@ -17,7 +27,14 @@ import org.topdank.byteengineer.commons.data.JarResource;
 import org.topdank.byteio.util.Debug;
 
 /**
- * Dumps ClassNodes and JarResources back into a file on the local system.
+ * Dumps ClassNodes and JarResources back into a file on the local system. <br>
+ * 
+ * The classes are turned into bytes (on a pool if one is set) before
+ * {@link #dumpAsync(File)} returns, so the nodes can be changed straight
+ * afterwards. The names of the entries are taken at the same time, so the
+ * writer never reads a node. The entries are written, in the order of the
+ * contents, by one writer thread that starts on the first class as soon as
+ * it's ready.
  *
  * @author Bibl
  */
@@ -25,14 +42,42 @@ public class CompleteJarDumper implements JarDumper {
 
 	private final JarContents<?> contents;
 	private final ClassTree classTree;
+	private ForkJoinPool pool;
+	private boolean stored;
 	/**
 	 * Creates a new JarDumper.
 	 *
 	 * @param contents Contents of jar.
 	 */
 	public CompleteJarDumper(JarContents<ClassNode> contents) {
+		this(contents, new ClassTree(contents.getClassContents()));
+	}
+
+	/**
+	 * Creates a new JarDumper that uses an existing tree of the classes.
+	 *
+	 * @param contents Contents of jar.
+	 * @param classTree The tree of the classes in the jar.
+	 */
+	public CompleteJarDumper(JarContents<?> contents, ClassTree classTree) {
 		this.contents = contents;
-		classTree = new ClassTree(contents.getClassContents());
+		this.classTree = classTree;
+	}
+
+	/**
+	 * @param pool The pool to write the classes on or null to write them on
+	 *            the calling thread.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @param stored Whether to store the entries without compressing them,
+	 *            which is quicker for jars that are only read back in.
+	 */
+	public void setStored(boolean stored) {
+		this.stored = stored;
 	}
 
 	/**
@@ -42,22 +87,94 @@ public class CompleteJarDumper implements JarDumper {
 	 */
 	@Override
 	public void dump(File file) throws IOException {
+		try {
+			dumpAsync(file).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Dumps the jars contents without waiting for the jar to be written.
+	 *
+	 * @param file File to dump it to.
+	 * @return The write, which gives the amount of things dumped.
+	 */
+	public Future<Integer> dumpAsync(File file) throws IOException {
 		if (file.exists())
 			file.delete();
 		file.createNewFile();
-		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
-		int classesDumped = 0;
-		int resourcesDumped = 0;
-		for (ClassNode cn : contents.getClassContents()) {
-			classesDumped += dumpClass(jos, cn.name, cn);
-		}
+
+		List<ClassNode> classes = new ArrayList<ClassNode>(contents.getClassContents());
+		List<Entry> resources = new ArrayList<Entry>();
 		for (JarResource res : contents.getResourceContents()) {
-			resourcesDumped += dumpResource(jos, res.getName(), res.getData());
+			resources.add(new Entry(res.getName(), res.getData()));
+		}
+		List<CompletableFuture<Entry>> encoded = new ArrayList<CompletableFuture<Entry>>(classes.size());
+		for (int i = 0; i < classes.size(); i++) {
+			encoded.add(new CompletableFuture<Entry>());
+		}
+
+		JarOutputStream jos = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		FutureTask<Integer> write = new FutureTask<Integer>(() -> {
+			int classesDumped = 0;
+			int resourcesDumped = 0;
+			try {
+				for (CompletableFuture<Entry> f : encoded) {
+					Entry e = join(f);
+					classesDumped += writeEntry(jos, e.name, e.data);
+				}
+				for (Entry e : resources) {
+					resourcesDumped += dumpResource(jos, e.name, e.data);
+				}
+			} finally {
+				jos.close();
+			}
+			if(!Debug.debugging)
+				System.out.println("Dumped " + classesDumped + " classes and " + resourcesDumped + " resources to " + file.getAbsolutePath());
+			return classesDumped + resourcesDumped;
+		});
+		new Thread(write, "JarWriter " + file.getName()).start();
+
+		for (int i = 0; i < classes.size(); i++) {
+			ClassNode cn = classes.get(i);
+			CompletableFuture<Entry> f = encoded.get(i);
+			Runnable encode = () -> {
+				try {
+					f.complete(new Entry(cn.name + ".class", encode(cn)));
+				} catch (Throwable t) {
+					f.completeExceptionally(t);
+				}
+			};
+			if (pool != null)
+				pool.execute(encode);
+			else
+				encode.run();
+		}
+		/* Wait for the classes to be turned into bytes before anything can
+		 * change them. The writer stops at the class that failed and closes
+		 * the file. */
+		try {
+			CompletableFuture.allOf(encoded.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			throw new IOException("Couldn't encode the classes of " + file.getName(), e.getCause());
+		}
+		return write;
+	}
+
+	private static Entry join(CompletableFuture<Entry> f) throws IOException {
+		try {
+			return f.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
 		}
-		if(!Debug.debugging)
-			System.out.println("Dumped " + classesDumped + " classes and " + resourcesDumped + " resources to " + file.getAbsolutePath());
-		
-		jos.close();
 	}
 
 	/**
@@ -71,51 +188,70 @@ public class CompleteJarDumper implements JarDumper {
 	 */
 	@Override
 	public int dumpClass(JarOutputStream out, String name, ClassNode cn) throws IOException {
-		JarEntry entry = new JarEntry(cn.name + ".class");
-		out.putNextEntry(entry);
+		return writeEntry(out, cn.name + ".class", encode(cn));
+	}
+
+	/**
+	 * Turns the {@link ClassNode} into the bytes of a class file. This can be
+	 * called from more than one thread at once.
+	 *
+	 * @param cn The ClassNode.
+	 * @return The class file.
+	 */
+	public byte[] encode(ClassNode cn) {
 		ClassWriter writer = new ClassWriter(0) {
-		    @Override
+			@Override
 			protected String getCommonSuperClass(final String type1, final String type2) {
-		    	ClassNode ccn = classTree.getClass(type1);
-		    	ClassNode dcn = classTree.getClass(type2);
-		    	
-		    	//System.out.println(type1 + " " + type2);
-		    	if(ccn == null) {
-		    		classTree.build(ClassStructure.create(type1));
-		    		return getCommonSuperClass(type1, type2);
-		    	}
-		    	
-		    	if(dcn == null) {
-		    		classTree.build(ClassStructure.create(type2));
-		    		return getCommonSuperClass(type1, type2);
-		    	}
-		    	
-		        Set<ClassNode> c = classTree.getSupers(ccn);
-		        Set<ClassNode> d = classTree.getSupers(dcn);
-		        
-		        if(c.contains(dcn))
-		        	return type1;
-		        
-		        if(d.contains(ccn))
-		        	return type2;
-		        
-		        if(Modifier.isInterface(ccn.access) || Modifier.isInterface(dcn.access)) {
-		        	return "java/lang/Object";
-		        } else {
-		        	do {
-		        		ClassNode nccn = classTree.getClass(ccn.superName);
-		        		if(nccn == null)
-		        			break;
-		        		ccn = nccn;
-		        		c = classTree.getSupers(ccn);
-		        	} while(!c.contains(dcn));
-		        	return ccn.name;
-		        }
-		    }
+				/* Only called when frames are computed, which ClassWriter(0)
+				 * doesn't do, so this lock is never taken right now. It's kept
+				 * for when frames are computed, as encode runs on more than one
+				 * thread and the tree isn't safe to read while a library is
+				 * added to it. */
+				synchronized (classTree) {
+					return commonSuperClass(type1, type2);
+				}
+			}
 		};
 		cn.accept(writer);
-		out.write(writer.toByteArray());
-		return 1;
+		return writer.toByteArray();
+	}
+
+	private String commonSuperClass(String type1, String type2) {
+		ClassNode ccn = classTree.getClass(type1);
+		ClassNode dcn = classTree.getClass(type2);
+
+		//System.out.println(type1 + " " + type2);
+		if(ccn == null) {
+			classTree.addLibrary(ClassStructure.create(type1));
+			return commonSuperClass(type1, type2);
+		}
+
+		if(dcn == null) {
+			classTree.addLibrary(ClassStructure.create(type2));
+			return commonSuperClass(type1, type2);
+		}
+
+		Set<ClassNode> c = classTree.getSupers(ccn);
+		Set<ClassNode> d = classTree.getSupers(dcn);
+
+		if(c.contains(dcn))
+			return type1;
+
+		if(d.contains(ccn))
+			return type2;
+
+		if(Modifier.isInterface(ccn.access) || Modifier.isInterface(dcn.access)) {
+			return "java/lang/Object";
+		} else {
+			do {
+				ClassNode nccn = classTree.getClass(ccn.superName);
+				if(nccn == null)
+					break;
+				ccn = nccn;
+				c = classTree.getSupers(ccn);
+			} while(!c.contains(dcn));
+			return ccn.name;
+		}
 	}
 
 	/**
@@ -129,9 +265,41 @@ public class CompleteJarDumper implements JarDumper {
 	 */
 	@Override
 	public int dumpResource(JarOutputStream out, String name, byte[] file) throws IOException {
+		return writeEntry(out, name, file);
+	}
+
+	/**
+	 * Writes an entry to the Jar, stored if {@link #setStored(boolean)} was set.
+	 *
+	 * @param out The {@link JarOutputStream}.
+	 * @param name The entry name.
+	 * @param data The bytes of the entry.
+	 * @throws IOException If there is a write error.
+	 * @return 1.
+	 */
+	protected int writeEntry(JarOutputStream out, String name, byte[] data) throws IOException {
 		JarEntry entry = new JarEntry(name);
+		if (stored) {
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, data.length);
+			entry.setMethod(JarEntry.STORED);
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			entry.setCrc(crc.getValue());
+		}
 		out.putNextEntry(entry);
-		out.write(file);
+		out.write(data);
 		return 1;
 	}
-}
\ No newline at end of file
+
+	/* The name and bytes of an entry, taken before dumpAsync returns. */
+	private static class Entry {
+		private final String name;
+		private final byte[] data;
+
+		Entry(String name, byte[] data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+}